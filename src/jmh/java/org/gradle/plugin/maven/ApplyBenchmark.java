@@ -0,0 +1,80 @@
+package org.gradle.plugin.maven;
+
+import org.gradle.api.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying the plugin to every project of a fresh build, end to end, with a cold or a warm metadata cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ApplyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int modules;
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    @Param({"false", "true"})
+    public boolean cache;
+
+    private SyntheticReactor reactor;
+    private String userHome;
+    private Project root;
+
+    @Setup
+    public void setUp() throws Exception {
+        reactor = SyntheticReactor.generate(modules, fanOut);
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", reactor.getUserHome().getAbsolutePath()); //offline settings
+        if (cache) {
+            createBuild();
+            applyToAllProjects();
+            releaseBuild();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createBuild() {
+        root = reactor.newGradleBuild();
+        root.setProperty(PluginOptions.CACHE, String.valueOf(cache));
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseBuild() {
+        MavenBuildContext.get(root).release();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        System.setProperty("user.home", userHome);
+        reactor.delete();
+    }
+
+    @Benchmark
+    public Project applyToAllProjects() {
+        for (Project module : root.getSubprojects()) {
+            module.getPlugins().apply(GradleM2MetadataPlugin.class);
+        }
+        return root;
+    }
+}
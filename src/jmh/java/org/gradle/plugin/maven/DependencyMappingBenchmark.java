@@ -0,0 +1,91 @@
+package org.gradle.plugin.maven;
+
+import org.apache.maven.project.ProjectBuilder;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping the dependencies of every module of an already read reactor onto fresh Gradle projects, as
+ * {@code addDependencies()} does during configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DependencyMappingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int modules;
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    private SyntheticReactor reactor;
+    private MavenReactor mavenReactor;
+    private Project root;
+    private MavenBuildContext buildContext;
+    private ObjectConverter converter;
+
+    @Setup
+    public void setUp() throws Exception {
+        reactor = SyntheticReactor.generate(modules, fanOut);
+        DefaultPlexusContainer container = new DefaultPlexusContainer(new DefaultContainerConfiguration()
+                .setClassWorld(new ClassWorld("plexus.core", getClass().getClassLoader()))
+                .setName("mavenCore"));
+        try {
+            mavenReactor = MavenReactor.build(reactor.getRootPom(), container.lookup(ProjectBuilder.class), reactor.newBuildingRequest(container));
+        } finally {
+            container.dispose();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createProjects() {
+        root = reactor.newGradleBuild();
+        for (Project module : root.getSubprojects()) {
+            module.getPlugins().apply(JavaPlugin.class);
+        }
+        buildContext = MavenBuildContext.get(root);
+        converter = MavenMappings.get(root).getConverter();
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseProjects() {
+        buildContext.release();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        reactor.delete();
+    }
+
+    @Benchmark
+    public Project mapDependencies() throws Exception {
+        for (Project module : root.getSubprojects()) {
+            File moduleDir = module.getProjectDir();
+            new GradleM2MetadataPlugin().addDependencies(module, buildContext, converter, mavenReactor.getModule(moduleDir), mavenReactor);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,73 @@
+package org.gradle.plugin.maven;
+
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.gradle.api.logging.Logging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the shared reactor model with Maven, serially and in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReactorBuildBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int modules;
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private SyntheticReactor reactor;
+    private DefaultPlexusContainer container;
+    private ProjectBuilder builder;
+    private ProjectBuildingRequest buildingRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        reactor = SyntheticReactor.generate(modules, fanOut);
+        container = new DefaultPlexusContainer(new DefaultContainerConfiguration()
+                .setClassWorld(new ClassWorld("plexus.core", getClass().getClassLoader()))
+                .setName("mavenCore"));
+        builder = container.lookup(ProjectBuilder.class);
+        buildingRequest = reactor.newBuildingRequest(container);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        container.dispose();
+        reactor.delete();
+    }
+
+    @Benchmark
+    public MavenReactor buildReactor() throws Exception {
+        if (parallel) {
+            return MavenReactor.buildInParallel(reactor.getRootPom(), builder, buildingRequest,
+                    Runtime.getRuntime().availableProcessors(), Logging.getLogger(ReactorBuildBenchmark.class));
+        }
+        return MavenReactor.build(reactor.getRootPom(), builder, buildingRequest);
+    }
+}
@@ -0,0 +1,90 @@
+package org.gradle.plugin.maven;
+
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The heap retained by the shared reactor model, i.e. what every project of the build keeps alive during
+ * configuration. Reported as the {@code retainedKilobytes} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReactorFootprintBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int modules;
+
+    @Param({"4", "16"})
+    public int fanOut;
+
+    private SyntheticReactor reactor;
+    private DefaultPlexusContainer container;
+    private ProjectBuilder builder;
+    private ProjectBuildingRequest buildingRequest;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedKilobytes;
+        private long usedBefore;
+
+        @Setup(Level.Invocation)
+        public void measureBefore() {
+            usedBefore = usedHeap();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        reactor = SyntheticReactor.generate(modules, fanOut);
+        container = new DefaultPlexusContainer(new DefaultContainerConfiguration()
+                .setClassWorld(new ClassWorld("plexus.core", getClass().getClassLoader()))
+                .setName("mavenCore"));
+        builder = container.lookup(ProjectBuilder.class);
+        buildingRequest = reactor.newBuildingRequest(container);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        container.dispose();
+        reactor.delete();
+    }
+
+    @Benchmark
+    public MavenReactor retainedReactor(Footprint footprint) throws Exception {
+        MavenReactor built = MavenReactor.build(reactor.getRootPom(), builder, buildingRequest);
+        footprint.retainedKilobytes += Math.max(0, usedHeap() - footprint.usedBefore) / 1024;
+        return built;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
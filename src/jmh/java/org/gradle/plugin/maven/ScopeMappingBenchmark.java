@@ -0,0 +1,48 @@
+package org.gradle.plugin.maven;
+
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per dependency lookup of the Gradle configuration matching a Maven scope and packaging.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScopeMappingBenchmark {
+
+    private static final String[] SCOPES = {"compile", "test", "runtime", "provided", "system", "import"};
+    private static final String[] PACKAGINGS = {"jar", "war", "ejb", "bundle", "pom"};
+
+    private ObjectConverter converter;
+
+    @Setup
+    public void compileMappings() {
+        converter = MavenMappings.get(ProjectBuilder.builder().build()).getConverter();
+    }
+
+    @Benchmark
+    public void scope2Configuration(Blackhole blackhole) {
+        for (String packaging : PACKAGINGS) {
+            int packagingCode = converter.packagingCode(packaging);
+            for (String scope : SCOPES) {
+                blackhole.consume(converter.scope2Configuration(packagingCode, MavenScope.of(scope)));
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.io.Files;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionRequestPopulator;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.PlexusContainer;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+
+/**
+ * A generated Maven reactor for the benchmarks: an aggregator with the given number of jar modules, each depending on
+ * up to {@code fanOut} of the modules before it and on {@code fanOut} external artifacts. The external artifacts live
+ * in a generated file repository and the settings are offline, so nothing ever goes to the network.
+ */
+class SyntheticReactor {
+
+    static final String GROUP_ID = "org.example.synthetic";
+    static final String EXTERNAL_GROUP_ID = "org.example.external";
+    static final String VERSION = "1.0";
+
+    private static final String[] SCOPES = {"compile", "test", "runtime", "provided"};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File baseDir;
+    private final File rootDir;
+    private final File remoteRepository;
+    private final File localRepository;
+    private final File userHome;
+    private final List<File> moduleDirs = new ArrayList<File>();
+
+    private SyntheticReactor(File baseDir) {
+        this.baseDir = baseDir;
+        this.rootDir = new File(baseDir, "reactor");
+        this.remoteRepository = new File(baseDir, "remote-repository");
+        this.localRepository = new File(baseDir, "local-repository");
+        this.userHome = new File(baseDir, "home");
+    }
+
+    static SyntheticReactor generate(int modules, int fanOut) throws IOException {
+        SyntheticReactor reactor = new SyntheticReactor(Files.createTempDir());
+        reactor.writeExternalArtifacts(fanOut);
+        reactor.writeRootPom(modules);
+        for (int i = 0; i < modules; i++) {
+            reactor.writeModulePom(i, fanOut);
+        }
+        reactor.writeSettings();
+        return reactor;
+    }
+
+    File getRootDir() {
+        return rootDir;
+    }
+
+    File getRootPom() {
+        return new File(rootDir, "pom.xml");
+    }
+
+    List<File> getModuleDirs() {
+        return moduleDirs;
+    }
+
+    /**
+     * A home directory whose .m2/settings.xml points to the generated local repository and is offline.
+     */
+    File getUserHome() {
+        return userHome;
+    }
+
+    /**
+     * A request building the reactor the same way the plugin does, against the generated local repository.
+     */
+    ProjectBuildingRequest newBuildingRequest(PlexusContainer container) throws Exception {
+        Settings settings = new Settings();
+        settings.setLocalRepository(localRepository.getAbsolutePath());
+        settings.setOffline(true);
+        MavenExecutionRequest executionRequest = new DefaultMavenExecutionRequest();
+        MavenExecutionRequestPopulator populator = container.lookup(MavenExecutionRequestPopulator.class);
+        populator.populateFromSettings(executionRequest, settings);
+        populator.populateDefaults(executionRequest);
+        ProjectBuildingRequest buildingRequest = executionRequest.getProjectBuildingRequest();
+        buildingRequest.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
+        return buildingRequest;
+    }
+
+    /**
+     * A Gradle project for the reactor root with a child project for every module, as a settings.gradle including
+     * all the modules would create.
+     */
+    Project newGradleBuild() {
+        Project root = ProjectBuilder.builder().withProjectDir(rootDir).withName("reactor").build();
+        for (File moduleDir : moduleDirs) {
+            ProjectBuilder.builder().withParent(root).withProjectDir(moduleDir).withName(moduleDir.getName()).build();
+        }
+        return root;
+    }
+
+    void delete() throws IOException {
+        Files.deleteRecursively(baseDir.getCanonicalFile());
+    }
+
+    private void writeExternalArtifacts(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String artifactId = "library-" + i;
+            File dir = new File(remoteRepository, EXTERNAL_GROUP_ID.replace('.', '/') + "/" + artifactId + "/" + VERSION);
+            write(new File(dir, artifactId + "-" + VERSION + ".pom"), "<project>\n"
+                    + "  <modelVersion>4.0.0</modelVersion>\n"
+                    + "  <groupId>" + EXTERNAL_GROUP_ID + "</groupId>\n"
+                    + "  <artifactId>" + artifactId + "</artifactId>\n"
+                    + "  <version>" + VERSION + "</version>\n"
+                    + "</project>\n");
+            new JarOutputStream(new FileOutputStream(new File(dir, artifactId + "-" + VERSION + ".jar"))).close();
+        }
+    }
+
+    private void writeRootPom(int modules) throws IOException {
+        StringBuilder pom = new StringBuilder("<project>\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>" + GROUP_ID + "</groupId>\n"
+                + "  <artifactId>reactor</artifactId>\n"
+                + "  <version>" + VERSION + "</version>\n"
+                + "  <packaging>pom</packaging>\n"
+                + "  <properties>\n"
+                + "    <java.level>1.5</java.level>\n"
+                + "  </properties>\n"
+                + "  <modules>\n");
+        for (int i = 0; i < modules; i++) {
+            pom.append("    <module>module-").append(i).append("</module>\n");
+        }
+        pom.append("  </modules>\n"
+                + "  <repositories>\n"
+                + "    <repository>\n"
+                + "      <id>synthetic</id>\n"
+                + "      <url>" + remoteRepository.toURI() + "</url>\n"
+                + "    </repository>\n"
+                + "  </repositories>\n"
+                + "  <build>\n"
+                + "    <plugins>\n"
+                + "      <plugin>\n"
+                + "        <groupId>org.apache.maven.plugins</groupId>\n"
+                + "        <artifactId>maven-compiler-plugin</artifactId>\n"
+                + "        <configuration>\n"
+                + "          <source>${java.level}</source>\n"
+                + "          <target>${java.level}</target>\n"
+                + "        </configuration>\n"
+                + "      </plugin>\n"
+                + "    </plugins>\n"
+                + "  </build>\n"
+                + "</project>\n");
+        write(getRootPom(), pom.toString());
+    }
+
+    private void writeModulePom(int index, int fanOut) throws IOException {
+        File moduleDir = new File(rootDir, "module-" + index);
+        moduleDirs.add(moduleDir);
+        StringBuilder pom = new StringBuilder("<project>\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <parent>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>reactor</artifactId>\n"
+                + "    <version>" + VERSION + "</version>\n"
+                + "  </parent>\n"
+                + "  <artifactId>module-" + index + "</artifactId>\n"
+                + "  <dependencies>\n");
+        for (int i = 1; i <= fanOut && index - i >= 0; i++) {
+            appendDependency(pom, GROUP_ID, "module-" + (index - i), i % 2 == 0 ? "test" : "compile", false);
+        }
+        for (int i = 0; i < fanOut; i++) {
+            appendDependency(pom, EXTERNAL_GROUP_ID, "library-" + i, SCOPES[(index + i) % SCOPES.length], i % 2 == 0);
+        }
+        pom.append("  </dependencies>\n"
+                + "</project>\n");
+        write(new File(moduleDir, "pom.xml"), pom.toString());
+    }
+
+    private static void appendDependency(StringBuilder pom, String groupId, String artifactId, String scope, boolean withExclusion) {
+        pom.append("    <dependency>\n"
+                + "      <groupId>").append(groupId).append("</groupId>\n"
+                + "      <artifactId>").append(artifactId).append("</artifactId>\n"
+                + "      <version>" + VERSION + "</version>\n"
+                + "      <scope>").append(scope).append("</scope>\n");
+        if (withExclusion) {
+            pom.append("      <exclusions>\n"
+                    + "        <exclusion>\n"
+                    + "          <groupId>commons-logging</groupId>\n"
+                    + "          <artifactId>commons-logging</artifactId>\n"
+                    + "        </exclusion>\n"
+                    + "      </exclusions>\n");
+        }
+        pom.append("    </dependency>\n");
+    }
+
+    private void writeSettings() throws IOException {
+        write(new File(userHome, ".m2/settings.xml"), "<settings>\n"
+                + "  <localRepository>" + localRepository.getAbsolutePath() + "</localRepository>\n"
+                + "  <offline>true</offline>\n"
+                + "</settings>\n");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createParentDirs(file);
+        Files.write(content, file, UTF_8);
+    }
+}
@@ -0,0 +1,316 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the wall time, allocated bytes and a few counters of every phase the plugin goes through, per module, and
+ * reports them at the end of the build. Phases may nest, in which case each one is accounted its own (self) time only.
+ */
+class ConfigurationProfiler {
+
+    static final String POMS_PARSED = "pomsParsed";
+    static final String DEPENDENCIES_MAPPED = "dependenciesMapped";
+    static final String REACTOR_LOOKUPS = "reactorLookups";
+
+    private static final int SLOWEST_MODULES_REPORTED = 10;
+    private static final Phase NO_PHASE = new Phase(null, null, null, null);
+
+    private final boolean enabled;
+    private final Map<String, Profile> modules = new LinkedHashMap<String, Profile>();
+    private final ThreadLocal<Phase> currentPhase = new ThreadLocal<Phase>();
+
+    ConfigurationProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    Phase start(String module, String phase) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+        Phase started = new Phase(this, module, phase, currentPhase.get());
+        currentPhase.set(started);
+        return started;
+    }
+
+    /**
+     * Starts a phase nested in the one running on this thread, on behalf of the same module.
+     */
+    Phase startNested(String phase) {
+        Phase current = currentPhase.get();
+        return start(current == null ? "" : current.module, phase);
+    }
+
+    /**
+     * Adds to a counter of the module whose phase is running on this thread.
+     */
+    void count(String counter, long amount) {
+        Phase phase = currentPhase.get();
+        if (phase != null) {
+            profile(phase.module).count(counter, amount);
+        }
+    }
+
+    private synchronized Profile profile(String module) {
+        Profile profile = modules.get(module);
+        if (profile == null) {
+            profile = new Profile();
+            modules.put(module, profile);
+        }
+        return profile;
+    }
+
+    synchronized void report(Logger logger) {
+        if (!enabled || modules.isEmpty()) {
+            return;
+        }
+        Profile total = new Profile();
+        for (Profile profile : modules.values()) {
+            total.add(profile);
+        }
+        logger.lifecycle("Maven metadata configuration profile of {} modules:", modules.size());
+        logger.lifecycle(String.format("  %-30s %12s %16s %8s", "phase", "time (ms)", "allocated (KB)", "calls"));
+        for (Map.Entry<String, Measurement> phase : total.phases.entrySet()) {
+            Measurement measurement = phase.getValue();
+            logger.lifecycle(String.format("  %-30s %12d %16d %8d", phase.getKey(), measurement.nanos / 1000000, measurement.allocatedBytes / 1024, measurement.calls));
+        }
+        for (Map.Entry<String, Long> counter : total.counters.entrySet()) {
+            logger.lifecycle(String.format("  %-30s %12d", counter.getKey(), counter.getValue()));
+        }
+        List<Map.Entry<String, Profile>> byTime = new ArrayList<Map.Entry<String, Profile>>(modules.entrySet());
+        Collections.sort(byTime, new Comparator<Map.Entry<String, Profile>>() {
+            public int compare(Map.Entry<String, Profile> first, Map.Entry<String, Profile> second) {
+                long firstNanos = first.getValue().total().nanos;
+                long secondNanos = second.getValue().total().nanos;
+                return firstNanos < secondNanos ? 1 : firstNanos == secondNanos ? 0 : -1;
+            }
+        });
+        logger.lifecycle("  slowest modules:");
+        for (int i = 0; i < byTime.size(); i++) {
+            Map.Entry<String, Profile> module = byTime.get(i);
+            Measurement measurement = module.getValue().total();
+            String line = String.format("  %-30s %12d %16d", module.getKey(), measurement.nanos / 1000000, measurement.allocatedBytes / 1024);
+            if (i < SLOWEST_MODULES_REPORTED) {
+                logger.lifecycle(line);
+            } else {
+                logger.info(line);
+            }
+        }
+    }
+
+    synchronized void writeJson(File reportFile) throws IOException {
+        Files.createParentDirs(reportFile);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write("{\n  \"pluginVersion\": ");
+            writeString(writer, getClass().getPackage().getImplementationVersion());
+            writer.write(",\n  \"modules\": {");
+            for (Iterator<Map.Entry<String, Profile>> iterator = modules.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<String, Profile> module = iterator.next();
+                writer.write("\n    ");
+                writeString(writer, module.getKey());
+                writer.write(": ");
+                module.getValue().writeJson(writer);
+                if (iterator.hasNext()) {
+                    writer.write(",");
+                }
+            }
+            writer.write("\n  }\n}\n");
+        } finally {
+            Closeables.closeQuietly(writer);
+        }
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < ' ') {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * A running phase. Stopping it records its measurements, less those of the phases nested in it.
+     */
+    static class Phase {
+        private final ConfigurationProfiler profiler;
+        private final String module;
+        private final String name;
+        private final Phase parent;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+        private long nestedNanos;
+        private long nestedAllocatedBytes;
+        private boolean stopped;
+
+        private Phase(ConfigurationProfiler profiler, String module, String name, Phase parent) {
+            this.profiler = profiler;
+            this.module = module;
+            this.name = name;
+            this.parent = parent;
+            this.startNanos = profiler == null ? 0 : System.nanoTime();
+            this.startAllocatedBytes = profiler == null ? 0 : AllocationCounter.allocatedBytes();
+        }
+
+        void stop() {
+            if (profiler == null || stopped) {
+                return;
+            }
+            stopped = true;
+            long nanos = System.nanoTime() - startNanos;
+            long allocatedBytes = AllocationCounter.allocatedBytes() - startAllocatedBytes;
+            profiler.profile(module).record(name, nanos - nestedNanos, allocatedBytes - nestedAllocatedBytes);
+            if (parent != null) {
+                parent.nestedNanos += nanos;
+                parent.nestedAllocatedBytes += allocatedBytes;
+            }
+            profiler.currentPhase.set(parent);
+        }
+
+        /**
+         * Stops this phase and starts the one following it.
+         */
+        Phase next(String phase) {
+            stop();
+            return profiler == null ? this : profiler.start(module, phase);
+        }
+    }
+
+    private static class Measurement {
+        private long nanos;
+        private long allocatedBytes;
+        private long calls;
+
+        void add(long nanos, long allocatedBytes, long calls) {
+            this.nanos += nanos;
+            this.allocatedBytes += allocatedBytes;
+            this.calls += calls;
+        }
+    }
+
+    private static class Profile {
+        private final Map<String, Measurement> phases = new LinkedHashMap<String, Measurement>();
+        private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+        synchronized void record(String phase, long nanos, long allocatedBytes) {
+            measurement(phase).add(nanos, allocatedBytes, 1);
+        }
+
+        synchronized void count(String counter, long amount) {
+            Long count = counters.get(counter);
+            counters.put(counter, count == null ? amount : count + amount);
+        }
+
+        synchronized void add(Profile other) {
+            for (Map.Entry<String, Measurement> phase : other.phases.entrySet()) {
+                Measurement measurement = phase.getValue();
+                measurement(phase.getKey()).add(measurement.nanos, measurement.allocatedBytes, measurement.calls);
+            }
+            for (Map.Entry<String, Long> counter : other.counters.entrySet()) {
+                count(counter.getKey(), counter.getValue());
+            }
+        }
+
+        synchronized Measurement total() {
+            Measurement total = new Measurement();
+            for (Measurement measurement : phases.values()) {
+                total.add(measurement.nanos, measurement.allocatedBytes, measurement.calls);
+            }
+            return total;
+        }
+
+        private Measurement measurement(String phase) {
+            Measurement measurement = phases.get(phase);
+            if (measurement == null) {
+                measurement = new Measurement();
+                phases.put(phase, measurement);
+            }
+            return measurement;
+        }
+
+        synchronized void writeJson(Writer writer) throws IOException {
+            Measurement total = total();
+            writer.write("{\"timeMs\": " + total.nanos / 1000000 + ", \"allocatedBytes\": " + total.allocatedBytes + ", \"phases\": {");
+            for (Iterator<Map.Entry<String, Measurement>> iterator = phases.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<String, Measurement> phase = iterator.next();
+                Measurement measurement = phase.getValue();
+                writeString(writer, phase.getKey());
+                writer.write(": {\"timeMs\": " + measurement.nanos / 1000000 + ", \"allocatedBytes\": " + measurement.allocatedBytes + ", \"calls\": " + measurement.calls + "}");
+                if (iterator.hasNext()) {
+                    writer.write(", ");
+                }
+            }
+            writer.write("}, \"counters\": {");
+            for (Iterator<Map.Entry<String, Long>> iterator = counters.entrySet().iterator(); iterator.hasNext();) {
+                Map.Entry<String, Long> counter = iterator.next();
+                writeString(writer, counter.getKey());
+                writer.write(": " + counter.getValue());
+                if (iterator.hasNext()) {
+                    writer.write(", ");
+                }
+            }
+            writer.write("}}");
+        }
+    }
+
+    /**
+     * Reads the bytes allocated by the current thread from the HotSpot specific thread MX bean, when available.
+     * Reflection keeps the plugin loadable on other JVMs, where allocations are reported as 0.
+     */
+    private static class AllocationCounter {
+        private static final Object THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+        private static final Method GET_THREAD_ALLOCATED_BYTES = allocatedBytesMethod();
+
+        private static Method allocatedBytesMethod() {
+            try {
+                Class<?> hotspotThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+                if (hotspotThreadMXBean.isInstance(THREAD_MX_BEAN)) {
+                    return hotspotThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+                }
+            } catch (Exception e) {
+                //not a HotSpot JVM
+            }
+            return null;
+        }
+
+        static long allocatedBytes() {
+            if (GET_THREAD_ALLOCATED_BYTES == null) {
+                return 0;
+            }
+            try {
+                long allocatedBytes = (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+                return Math.max(0, allocatedBytes);
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+}
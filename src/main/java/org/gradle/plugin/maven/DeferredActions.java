@@ -0,0 +1,149 @@
+package org.gradle.plugin.maven;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.ResolvableDependencies;
+import org.gradle.api.execution.TaskExecutionGraph;
+import org.gradle.api.execution.TaskExecutionGraphListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Conversions the plugin postpones until their result is needed. In lazy mode repositories and external dependencies
+ * are added only when a configuration is about to be resolved, and the test runner is configured only when a test task
+ * is going to run, so builds that never resolve anything don't pay for them. Otherwise the actions run right away.
+ * <p/>
+ * Project dependencies are never postponed, as Gradle needs them to compute the task graph.
+ * <p/>
+ * Projects configured in parallel may add actions while others are being realized, so pending actions are kept in
+ * concurrent queues and taken off them one by one: each runs exactly once and none added concurrently is lost. The
+ * actions of a queue are run holding its lock, so a realizer finding it empty while another one is still running what
+ * it took off waits for it, instead of resolving a configuration that is still being changed.
+ */
+class DeferredActions {
+
+    private final boolean lazy;
+    private final ConcurrentMap<Project, Queue<Runnable>> pendingByProject = new ConcurrentHashMap<Project, Queue<Runnable>>();
+    private final ConcurrentMap<Configuration, Queue<Runnable>> pendingByConfiguration = new ConcurrentHashMap<Configuration, Queue<Runnable>>();
+    private final ConcurrentMap<Project, Boolean> hookedProjects = new ConcurrentHashMap<Project, Boolean>();
+
+    DeferredActions(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Runs the action before any configuration of the project is resolved.
+     */
+    void beforeAnyResolve(Project project, Runnable action) {
+        if (lazy) {
+            hook(project);
+            pending(pendingByProject, project).add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action before the configuration, or a configuration extending it, is resolved.
+     */
+    void beforeResolve(Project project, Configuration configuration, Runnable action) {
+        if (lazy) {
+            hook(project);
+            pending(pendingByConfiguration, configuration).add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action once the task graph is ready, if it contains any of the project's tasks with the given name.
+     */
+    void whenTaskScheduled(final Project project, final String taskName, final Runnable action) {
+        if (lazy) {
+            project.getGradle().getTaskGraph().addTaskExecutionGraphListener(new TaskExecutionGraphListener() {
+                public void graphPopulated(TaskExecutionGraph graph) {
+                    for (Task task : project.getTasksByName(taskName, false)) {
+                        if (graph.hasTask(task)) {
+                            action.run();
+                            return;
+                        }
+                    }
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs everything pending for the configuration, the configurations it extends and, transitively, the
+     * configurations of the projects it depends on.
+     */
+    void realize(Project project, Configuration configuration) {
+        realize(project, configuration, new HashSet<Configuration>());
+    }
+
+    private void realize(Project project, Configuration configuration, Set<Configuration> visited) {
+        runAll(pendingByProject.get(project));
+        for (Configuration current : configuration.getHierarchy()) {
+            if (visited.add(current)) {
+                runAll(pendingByConfiguration.get(current));
+                for (Dependency dependency : new ArrayList<Dependency>(current.getDependencies())) {
+                    if (dependency instanceof ProjectDependency) {
+                        Project dependencyProject = ((ProjectDependency) dependency).getDependencyProject();
+                        Configuration dependencyConfiguration = dependencyProject.getConfigurations().findByName(dependency.getConfiguration());
+                        if (dependencyConfiguration != null) {
+                            realize(dependencyProject, dependencyConfiguration, visited);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void hook(final Project project) {
+        if (hookedProjects.putIfAbsent(project, Boolean.TRUE) == null) {
+            project.getConfigurations().all(new Action<Configuration>() {
+                public void execute(final Configuration configuration) {
+                    configuration.getIncoming().beforeResolve(new Action<ResolvableDependencies>() {
+                        public void execute(ResolvableDependencies dependencies) {
+                            realize(project, configuration);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private static <K> Queue<Runnable> pending(ConcurrentMap<K, Queue<Runnable>> pendingByKey, K key) {
+        Queue<Runnable> pending = pendingByKey.get(key);
+        if (pending == null) {
+            Queue<Runnable> created = new ConcurrentLinkedQueue<Runnable>();
+            pending = pendingByKey.putIfAbsent(key, created);
+            if (pending == null) {
+                pending = created;
+            }
+        }
+        return pending;
+    }
+
+    private static void runAll(Queue<Runnable> actions) {
+        if (actions != null) {
+            synchronized (actions) {
+                for (Runnable action = actions.poll(); action != null; action = actions.poll()) {
+                    action.run();
+                }
+            }
+        }
+    }
+}
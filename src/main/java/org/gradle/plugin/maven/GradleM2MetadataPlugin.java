@@ -1,32 +1,18 @@
 package org.gradle.plugin.maven;
 
-import com.google.common.base.Function;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Multimap;
 import org.apache.ivy.core.module.descriptor.ModuleDescriptor;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.*;
-import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Exclusion;
-import org.apache.maven.model.Repository;
 import org.apache.maven.model.building.ModelBuildingRequest;
 import org.apache.maven.project.*;
-import org.apache.maven.project.artifact.ProjectArtifact;
 import org.apache.maven.settings.Settings;
-import org.apache.maven.settings.building.DefaultSettingsBuildingRequest;
-import org.apache.maven.settings.building.SettingsBuilder;
 import org.apache.maven.settings.building.SettingsBuildingException;
-import org.apache.maven.settings.building.SettingsBuildingRequest;
-import org.codehaus.plexus.ContainerConfiguration;
-import org.codehaus.plexus.DefaultContainerConfiguration;
 import org.codehaus.plexus.DefaultPlexusContainer;
 import org.codehaus.plexus.PlexusContainerException;
-import org.codehaus.plexus.classworlds.ClassWorld;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -35,7 +21,6 @@ import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
 import org.gradle.api.file.FileCollection;
-import org.gradle.api.internal.artifacts.dependencies.AbstractDependency;
 import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency;
 import org.gradle.api.internal.artifacts.dependencies.DefaultProjectDependency;
 import org.gradle.api.internal.artifacts.dependencies.DefaultSelfResolvingDependency;
@@ -51,85 +36,134 @@ import org.gradle.api.tasks.testing.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static com.google.common.collect.ImmutableMap.of;
 import static com.google.common.collect.Iterables.*;
-import static com.google.common.collect.Multimaps.index;
 import static org.gradle.api.artifacts.Dependency.ARCHIVES_CONFIGURATION;
-import static org.gradle.plugin.maven.ObjectConverter.scope2Configuration;
-
 
+/**
+ * Configures a project from its pom.xml. Gradle creates an instance per project, so the fields only ever hold the state
+ * of the project being configured; whatever is shared between projects, which may be configured in parallel, goes
+ * through the thread safe {@link MavenBuildContext}.
+ */
 public class GradleM2MetadataPlugin implements Plugin<Project> {
 
-    private static final String MAVEN_COMPILER_PLUGIN_KEY = "org.apache.maven.plugins:maven-compiler-plugin";
-    private static final String MAVEN_SOURCE_PLUGIN_KEY = "org.apache.maven.plugins:maven-source-plugin";
     private static final String SOURCES_CLASSIFIER = "sources";
     private static final String SOURCES_JAR_TASK_NAME = "sourcesJar";
-    private static final String SOURCE_LEVEL_COMPILE_PLUGIN_SETTING = "source";
-    private static final String TARGET_LEVEL_COMPILE_PLUGIN_SETTING = "target";
     private static final String JAVA_PLUGIN_CONVENTION_NAME = "java";
-    private static final String DEPENDENCIES_KEY = "lateBindDeps";
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String INDEXED_LOCAL_REPOSITORY_NAME = "indexedLocalRepository";
     private static final String TESTNG_GROUP = "org.testng";
     private static final String TESTNG_NAME = "testng";
     private static final String TEST_RUNTIME_CONFIGURATION = "testRuntime";
     private File defaultUserSettingsFile;
     private File defaultGlobalSettingsFile;
 
-    private MavenProject mavenProject;
+    private ModuleSnapshot mavenModule;
+    private ObjectConverter converter;
+    private int packagingCode;
     private Project project;
+    private MavenBuildContext buildContext;
+    private DeferredActions deferredActions;
+    private ConfigurationProfiler profiler;
+    private LocalRepositoryIndex localRepositoryIndex;
+    private boolean offline;
     private Settings mavenSettings;
     private DefaultPlexusContainer container;
-    private Iterable<MavenProject> reactorProjects;
+    private MavenReactor reactor;
     private static final String TEST_COMPILE_CONFIGURATION = "testCompile";
 
     public void apply(Project project) {
-        this.project = project;
-        defaultUserSettingsFile = new File(new File(System.getProperty("user.home"), ".m2"), "settings.xml");
-        defaultGlobalSettingsFile = new File(System.getProperty("maven.home", System.getProperty("user.dir", "")), "conf/settings.xml");
-        
+        init(project);
+        ConfigurationProfiler.Phase phase = profiler.start(project.getPath(), "readMavenProject");
         try {
             project.getLogger().lifecycle("Reading maven project for {}...", project.getName());
-            buildContainer();
-            readSettings();
+            addIndexTask();
             readMavenProject();
+            packagingCode = converter.packagingCode(mavenModule.getPackaging());
+            phase = phase.next("configureSettings");
             project.getLogger().lifecycle("Configuring general settings...");
             configureSettings();
+            phase = phase.next("applyGradlePlugins");
             project.getLogger().lifecycle("Applying Gradle plugins according to packaging type...");
             applyGradlePlugins();
+            phase = phase.next("retrieveMavenPluginsMetadata");
             project.getLogger().lifecycle("Retrieving metadata from known Maven plugins...");
             retrieveMavenPluginsMetadata();
+            phase = phase.next("addRepositories");
             project.getLogger().lifecycle("Applying Maven repositories...");
             addRepositories();
+            phase = phase.next("addDependencies");
             project.getLogger().lifecycle("Adding project dependencies...");
             addDependencies();
+            phase = phase.next("forceManagedVersions");
+            forceManagedVersions();
+            phase = phase.next("configureTests");
             project.getLogger().lifecycle("Configuring correct test runner...");
             configureTests();
         } catch (Exception e) {
             throw new GradleException("failed to read Maven project", e);
+        } finally {
+            phase.stop();
         }
     }
 
+    private void init(Project project) {
+        init(project, MavenBuildContext.get(project), MavenMappings.get(project).getConverter());
+        defaultUserSettingsFile = MavenBuildContext.defaultUserSettingsFile();
+        defaultGlobalSettingsFile = MavenBuildContext.defaultGlobalSettingsFile();
+    }
+
+    private void init(Project project, MavenBuildContext buildContext, ObjectConverter converter) {
+        this.project = project;
+        this.buildContext = buildContext;
+        this.deferredActions = buildContext.getDeferredActions();
+        this.profiler = buildContext.getProfiler();
+        this.converter = converter;
+        this.offline = buildContext.isOffline();
+    }
+
+    /**
+     * Maps the dependencies of an already read module onto the project, so the benchmarks can measure the mapping on
+     * its own. The context and the mappings are looked up once by the caller rather than for every module.
+     */
+    @VisibleForTesting
+    void addDependencies(Project project, MavenBuildContext buildContext, ObjectConverter converter, ModuleSnapshot mavenModule, MavenReactor reactor) throws IOException {
+        init(project, buildContext, converter);
+        this.mavenModule = mavenModule;
+        this.packagingCode = converter.packagingCode(mavenModule.getPackaging());
+        this.reactor = reactor;
+        addDependencies();
+    }
+
     private void configureTests() {
-        ConfigurationContainer configurations = project.getConfigurations();
-        Configuration testRuntime = configurations.findByName(TEST_RUNTIME_CONFIGURATION);
-        Configuration testCompile = configurations.findByName(TEST_COMPILE_CONFIGURATION);
-        Set<org.gradle.api.artifacts.Dependency> testDependencies = new HashSet<org.gradle.api.artifacts.Dependency>();
-        if (testCompile != null) {
-            testDependencies.addAll(testCompile.    getDependencies());
-        }
-        if (testRuntime != null) {
-            testDependencies.addAll(testRuntime.getDependencies());
-        }
-        if (any(testDependencies, new Predicate<org.gradle.api.artifacts.Dependency>() {
-            public boolean apply(org.gradle.api.artifacts.Dependency input) {
-                return input instanceof DefaultExternalModuleDependency && input.getGroup().equals(TESTNG_GROUP) && input.getName().equals(TESTNG_NAME);
-            }
-        })) {
-            Set<Task> tests = project.getTasksByName("test", false);
-            for (Task test : tests) {
-                ((Test) test).useTestNG();
+        deferredActions.whenTaskScheduled(project, JavaPlugin.TEST_TASK_NAME, new Runnable() {
+            public void run() {
+                ConfigurationContainer configurations = project.getConfigurations();
+                Configuration testRuntime = configurations.findByName(TEST_RUNTIME_CONFIGURATION);
+                Configuration testCompile = configurations.findByName(TEST_COMPILE_CONFIGURATION);
+                Set<org.gradle.api.artifacts.Dependency> testDependencies = new HashSet<org.gradle.api.artifacts.Dependency>();
+                if (testCompile != null) {
+                    deferredActions.realize(project, testCompile);
+                    testDependencies.addAll(testCompile.getDependencies());
+                }
+                if (testRuntime != null) {
+                    deferredActions.realize(project, testRuntime);
+                    testDependencies.addAll(testRuntime.getDependencies());
+                }
+                if (any(testDependencies, new Predicate<org.gradle.api.artifacts.Dependency>() {
+                    public boolean apply(org.gradle.api.artifacts.Dependency input) {
+                        return input instanceof DefaultExternalModuleDependency && input.getGroup().equals(TESTNG_GROUP) && input.getName().equals(TESTNG_NAME);
+                    }
+                })) {
+                    Set<Task> tests = project.getTasksByName(JavaPlugin.TEST_TASK_NAME, false);
+                    for (Task test : tests) {
+                        ((Test) test).useTestNG();
+                    }
+                }
             }
-        }
+        });
     }
 
     private void retrieveMavenPluginsMetadata() {
@@ -142,8 +176,7 @@ public class GradleM2MetadataPlugin implements Plugin<Project> {
     }
 
     private void configureSources(JavaPluginConvention javaConvention) {
-        org.apache.maven.model.Plugin mavenSourcePlugin = mavenProject.getPlugin(MAVEN_SOURCE_PLUGIN_KEY);
-        if (mavenSourcePlugin != null) {
+        if (mavenModule.hasSourcePlugin()) {
             Jar sourcesJar = project.getTasks().add(SOURCES_JAR_TASK_NAME, Jar.class);
             sourcesJar.setDescription("Generates a  jar archive with all the source classes.");
             sourcesJar.dependsOn(project.getTasksByName(JavaPlugin.COMPILE_JAVA_TASK_NAME, false));
@@ -154,157 +187,250 @@ public class GradleM2MetadataPlugin implements Plugin<Project> {
     }
 
     private void configureCompiler(JavaPluginConvention javaConvention) {
-        org.apache.maven.model.Plugin mavenCompilerPlugin = mavenProject.getPlugin(MAVEN_COMPILER_PLUGIN_KEY);
-        Xpp3Dom configuration = (Xpp3Dom) mavenCompilerPlugin.getConfiguration();
-        if (configuration != null) { //where is my null safe elvis :(
-            Xpp3Dom source = configuration.getChild(SOURCE_LEVEL_COMPILE_PLUGIN_SETTING);
-            if (source != null) {
-                javaConvention.setSourceCompatibility(source.getValue());
-
-            }
-            Xpp3Dom target = configuration.getChild(TARGET_LEVEL_COMPILE_PLUGIN_SETTING);
-            if (target != null) {
-                javaConvention.setTargetCompatibility(target.getValue());
-            }
+        if (mavenModule.getCompilerSource() != null) {
+            javaConvention.setSourceCompatibility(mavenModule.getCompilerSource());
+        }
+        if (mavenModule.getCompilerTarget() != null) {
+            javaConvention.setTargetCompatibility(mavenModule.getCompilerTarget());
         }
     }
 
     private void configureSettings() {
         AbstractProject abstractProject = (AbstractProject) project;
-        abstractProject.setVersion(mavenProject.getVersion());
-        abstractProject.setGroup(mavenProject.getGroupId());
-        Artifact projectArtifact = new ProjectArtifact(mavenProject);
-        abstractProject.setStatus(projectArtifact.isSnapshot() ? Artifact.SNAPSHOT_VERSION : Project.DEFAULT_STATUS);
+        abstractProject.setVersion(mavenModule.getVersion());
+        abstractProject.setGroup(mavenModule.getGroupId());
+        abstractProject.setStatus(mavenModule.isSnapshot() ? Artifact.SNAPSHOT_VERSION : Project.DEFAULT_STATUS);
     }
 
-    private void readSettings() throws IOException, ComponentLookupException, SettingsBuildingException {
-        Properties props = new Properties();
-        props.putAll(System.getProperties());
-        Properties envVars = CommandLineUtils.getSystemEnvVars();
-        for (Map.Entry<Object, Object> objectObjectEntry : envVars.entrySet()) {
-            props.setProperty("env." + objectObjectEntry.getKey().toString(), objectObjectEntry.getValue().toString());
+    private void readSettings() throws PlexusContainerException, ComponentLookupException, SettingsBuildingException {
+        ConfigurationProfiler.Phase phase = profiler.startNested("readSettings");
+        try {
+            this.mavenSettings = buildContext.getSettings(defaultGlobalSettingsFile, defaultUserSettingsFile);
+        } finally {
+            phase.stop();
         }
-        SettingsBuildingRequest request = new DefaultSettingsBuildingRequest();
-        request.setGlobalSettingsFile(defaultGlobalSettingsFile);
-        request.setUserSettingsFile(defaultUserSettingsFile);
-        request.setSystemProperties(props);
-        this.mavenSettings = container.lookup(SettingsBuilder.class).build(request).getEffectiveSettings();
     }
 
-    private void addRepositories() {
-        List<Repository> mavenRepositories = mavenProject.getRepositories();
-        RepositoryHandler repositoryHandler = project.getRepositories();
-        for (Repository mavenRepository : mavenRepositories) {
-            repositoryHandler.mavenRepo(of("name", mavenRepository.getId(), "urls", mavenRepository.getUrl()));
+    /**
+     * The index task belongs to the root project, so it is added by the root project's own configuration only.
+     */
+    private void addIndexTask() throws IOException {
+        if (project == project.getRootProject()) {
+            IndexLocalRepositoryTask indexTask = project.getTasks().add(MavenBuildContext.INDEX_LOCAL_REPOSITORY_TASK_NAME, IndexLocalRepositoryTask.class);
+            indexTask.setDescription("Indexes the Maven local repository, to serve dependencies from it first.");
+            indexTask.setIndexFile(buildContext.getLocalRepositoryIndexFile());
+        }
+        localRepositoryIndex = buildContext.getLocalRepositoryIndex();
+    }
+
+    /**
+     * In offline mode, fails on a dependency which isn't in the local repository index, or on any dependency if there
+     * is no index yet, unless the build is the one indexing the repository.
+     */
+    private void checkAvailableOffline(ModuleSnapshot.Dependency mavenDependency) {
+        if (localRepositoryIndex == null) {
+            if (!buildContext.isIndexTaskRequested()) {
+                throw new GradleException("Offline mode needs the local repository index, run the " + MavenBuildContext.INDEX_LOCAL_REPOSITORY_TASK_NAME + " task first");
+            }
+        } else if (localRepositoryIndex.find(mavenDependency.getGroupId(), mavenDependency.getArtifactId(), mavenDependency.getVersion()) == null) {
+            throw new GradleException("Dependency " + mavenDependency.getGroupId() + ':' + mavenDependency.getArtifactId() + ':' + mavenDependency.getVersion()
+                    + " isn't in the indexed local repository " + localRepositoryIndex.getRepository() + " and remote repositories can't be used offline");
         }
     }
 
+    /**
+     * The indexed local repository, if any, comes first so the dependencies found in it never go to the network.
+     * In offline mode it is the only one.
+     */
+    private void addRepositories() {
+        deferredActions.beforeAnyResolve(project, new Runnable() {
+            public void run() {
+                RepositoryHandler repositoryHandler = project.getRepositories();
+                if (localRepositoryIndex != null) {
+                    repositoryHandler.mavenRepo(of("name", INDEXED_LOCAL_REPOSITORY_NAME, "urls", localRepositoryIndex.getRepository().toURI().toString()));
+                }
+                if (offline) {
+                    return;
+                }
+                List<ModuleSnapshot.Repository> mavenRepositories = mavenModule.getRepositories();
+                for (ModuleSnapshot.Repository mavenRepository : mavenRepositories) {
+                    repositoryHandler.mavenRepo(of("name", mavenRepository.getId(), "urls", mavenRepository.getUrl()));
+                }
+            }
+        });
+    }
+
     private void applyGradlePlugins() {
         //TODO project.apply(of("plugin", "maven")); - can't do it because Maven2 dependencies in gradle class loader
-        String pluginName = ObjectConverter.packaging2Plugin(mavenProject.getPackaging());
-        if (pluginName != null) {
+        String pluginName = converter.packaging2Plugin(packagingCode);
+        if (packagingCode == ObjectConverter.UNKNOWN_PACKAGING) {
+            project.getLogger().warn("Unknown packaging {}, no Gradle plugin applied. Map it with MavenMappings to apply one", mavenModule.getPackaging());
+        } else if (pluginName != null) {
             project.apply(of("plugin", pluginName));
         }
-        //only now we can add dependencies on this project classes
-        addReverseDependenciesOnClasses();
     }
 
-    @SuppressWarnings({"unchecked"})
-    private void addReverseDependenciesOnClasses() {
-        JavaPluginConvention convention = (JavaPluginConvention) project.getConvention().getPlugins().get(JAVA_PLUGIN_CONVENTION_NAME);
-        if (convention != null) {
-            List<DepDef> moduleDeps = (List<DepDef>) project.getProperties().get(DEPENDENCIES_KEY);
-            if (moduleDeps != null) {
-                for (DepDef moduleDep : moduleDeps) {
-                    Configuration configuration = moduleDep.project.getConfigurations().getByName(moduleDep.configuration);
-                    FileCollection testClasses = convention.getSourceSets().getByName("test").getOutput();
-                    configuration.addDependency(new DefaultSelfResolvingDependency(testClasses));
+    /**
+     * Maps the dependencies in a single pass, looking the configuration of each scope up once per module.
+     */
+    @SuppressWarnings("unchecked")
+    private void addDependencies() throws IOException {
+        ConfigurationContainer configurations = project.getConfigurations();
+        Configuration[] configurationsByScope = new Configuration[MavenScope.COUNT];
+        boolean[] scopesLookedUp = new boolean[MavenScope.COUNT];
+        List<ModuleSnapshot.Dependency>[] externalDependencies = null; //by scope, only for the scopes that occur
+        int mapped = 0;
+        for (ModuleSnapshot.Dependency mavenDependency : mavenModule.getDependencies()) {
+            MavenScope scope = MavenScope.of(mavenDependency.getScope());
+            if (scope == null) {
+                project.getLogger().warn("Unknown scope {} of dependency {}:{}", new Object[]{mavenDependency.getScope(), mavenDependency.getGroupId(), mavenDependency.getArtifactId()});
+                continue;
+            }
+            if (!scopesLookedUp[scope.ordinal()]) {
+                scopesLookedUp[scope.ordinal()] = true;
+                configurationsByScope[scope.ordinal()] = configuration(configurations, scope);
+            }
+            Configuration configuration = configurationsByScope[scope.ordinal()];
+            if (configuration == null) {
+                continue;
+            }
+            mapped++;
+            if (scope == MavenScope.SYSTEM) { //in no repository, only at its path
+                if (mavenDependency.getSystemPath() == null) {
+                    project.getLogger().warn("System dependency {}:{} has no systemPath", mavenDependency.getGroupId(), mavenDependency.getArtifactId());
+                } else {
+                    configuration.addDependency(new DefaultSelfResolvingDependency(project.files(mavenDependency.getSystemPath())));
+                }
+                continue;
+            }
+            profiler.count(ConfigurationProfiler.REACTOR_LOOKUPS, 1);
+            ModuleSnapshot projectModule = reactor.getModule(mavenDependency.getGroupId(), mavenDependency.getArtifactId(), mavenDependency.getVersion());
+            if (projectModule == null) {//no module found, add external dependency
+                if (offline) {
+                    checkAvailableOffline(mavenDependency);
+                }
+                if (externalDependencies == null) {
+                    externalDependencies = new List[MavenScope.COUNT];
+                }
+                if (externalDependencies[scope.ordinal()] == null) {
+                    externalDependencies[scope.ordinal()] = new ArrayList<ModuleSnapshot.Dependency>();
+                }
+                externalDependencies[scope.ordinal()].add(mavenDependency);
+            } else { //Project Dependency found
+                ProjectInternal projectDependency = (ProjectInternal) buildContext.getGradleProject(projectModule.getBasedir());
+                if (projectDependency == null) {
+                    throw new GradleException("No Gradle project found for Maven module " + projectModule.getId() + " in " + projectModule.getBasedir());
+                }
+                if (configuration.getName().equals(TEST_COMPILE_CONFIGURATION) || configuration.getName().equals(TEST_RUNTIME_CONFIGURATION)) { // tests aren't packaged, so we need to depend on compiled classes
+                    addDependencyOnTestClasses(configuration, projectDependency);
+                } else {
+                    configuration.addDependency(new DefaultProjectDependency(projectDependency, ModuleDescriptor.DEFAULT_CONFIGURATION, project.getGradle().getStartParameter().getProjectDependenciesBuildInstruction()));
                 }
             }
         }
+        profiler.count(ConfigurationProfiler.DEPENDENCIES_MAPPED, mapped);
+        if (externalDependencies == null) {
+            return;
+        }
+        for (int scope = 0; scope < MavenScope.COUNT; scope++) {
+            if (externalDependencies[scope] == null) {
+                continue;
+            }
+            final Configuration configuration = configurationsByScope[scope];
+            final List<ModuleSnapshot.Dependency> configurationDependencies = externalDependencies[scope];
+            deferredActions.beforeResolve(project, configuration, new Runnable() {
+                public void run() {
+                    for (ModuleSnapshot.Dependency mavenDependency : configurationDependencies) {
+                        configuration.addDependency(externalDependency(mavenDependency));
+                    }
+                }
+            });
+        }
     }
 
-    @SuppressWarnings({"unchecked"})
-    private void addDependencies() {
-        List<Dependency> dependencies = mavenProject.getDependencies();
-        Multimap<String, Dependency> dependenciesByScope = index(dependencies, new Function<Dependency, String>() {
-            public String apply(Dependency from) {
-                return from.getScope();
+    /**
+     * Forces the versions of the module's dependencyManagement, imported BOMs included, on all its configurations, so
+     * Gradle picks the versions Maven would without having to resolve conflicts. The versions of the module's direct
+     * dependencies win over the managed ones, as in Maven. Modules inheriting the same dependencyManagement share the
+     * same list of versions.
+     */
+    private void forceManagedVersions() {
+        List<String> managedVersions = mavenModule.getManagedVersions();
+        if (managedVersions.isEmpty()) {
+            return;
+        }
+        final Object[] forcedVersions = managedVersions.toArray();
+        project.getConfigurations().all(new Action<Configuration>() {
+            public void execute(Configuration configuration) {
+                configuration.getResolutionStrategy().force(forcedVersions);
             }
         });
-        ConfigurationContainer configurations = project.getConfigurations();
-        for (String scope : dependenciesByScope.keySet()) {
-            String packaging = mavenProject.getPackaging();
-            String configurationName = scope2Configuration(scope, packaging);
-            if (configurationName == null) {
-                project.getLogger().warn("Can't find configuration matching scope {} for packaging {}", scope, packaging);
+    }
+
+    /**
+     * @return the configuration dependencies in the scope go to, or null if they aren't added to any
+     */
+    private Configuration configuration(ConfigurationContainer configurations, MavenScope scope) {
+        String packaging = mavenModule.getPackaging();
+        String configurationName = converter.scope2Configuration(packagingCode, scope);
+        if (configurationName == null) {
+            if (packagingCode == ObjectConverter.UNKNOWN_PACKAGING) {
+                project.getLogger().warn("Can't find configuration matching scope {} for packaging {}", scope.getName(), packaging);
             } else {
-                org.gradle.api.artifacts.Configuration configuration = configurations.getByName(configurationName);
-                Collection<Dependency> scopeDependencies = dependenciesByScope.get(scope);
-                for (final Dependency mavenDependency : scopeDependencies) {
-                    AbstractDependency dependency;
-                    Iterable<MavenProject> projectModules = filter(reactorProjects, new Predicate<MavenProject>() {//find maven module for dependency
+                project.getLogger().info("Dependencies in scope {} aren't mapped to any configuration for packaging {}", scope.getName(), packaging);
+            }
+            return null;
+        }
+        Configuration configuration = configurations.findByName(configurationName);
+        if (configuration == null) {
+            project.getLogger().warn("Configuration {} matching scope {} for packaging {} doesn't exist", new Object[]{configurationName, scope.getName(), packaging});
+        }
+        return configuration;
+    }
 
-                        public boolean apply(MavenProject input) {
-                            return (input.getGroupId().equals(mavenDependency.getGroupId()) &&
-                                    input.getArtifactId().equals(mavenDependency.getArtifactId()) &&
-                                    input.getVersion().equals(mavenDependency.getVersion()));
-                        }
-                    });
+    private static DefaultExternalModuleDependency externalDependency(ModuleSnapshot.Dependency mavenDependency) {
+        DefaultExternalModuleDependency dependency = new DefaultExternalModuleDependency(mavenDependency.getGroupId(), mavenDependency.getArtifactId(), mavenDependency.getVersion());
+        List<ModuleSnapshot.Exclusion> exclusions = mavenDependency.getExclusions();
+        for (ModuleSnapshot.Exclusion exclusion : exclusions) {
+            dependency.exclude(exclusion.getExcludeRule());
+        }
+        return dependency;
+    }
 
-                    if (Iterables.isEmpty(projectModules)) {//no module found, add external dependency
-                        dependency = new DefaultExternalModuleDependency(mavenDependency.getGroupId(), mavenDependency.getArtifactId(), mavenDependency.getVersion());
-                        List<Exclusion> exclusions = mavenDependency.getExclusions();
-                        for (Exclusion exclusion : exclusions) {
-                            ((DefaultExternalModuleDependency) dependency).exclude(of("group", exclusion.getGroupId(), "module", exclusion.getArtifactId()));
-                        }
-                    } else { //Project Dependency found
-                        final File mavenModule = Iterables.getOnlyElement(projectModules).getBasedir();
-                        // this is a concrete gradle project, it probably has parent in which the plugin is applied in subprojects closure
-                        Set<Project> allProjects = new HashSet<Project>();
-                        collectAllProjects(project, allProjects);
-                        ProjectInternal projectDependency = (ProjectInternal) find(allProjects, new Predicate<Project>() {
-                            public boolean apply(Project input) {//input:project ':policy-client/1.0'
-                                return mavenModule.equals(input.getBuildDir().getParentFile());//project dir
-                            }
-                        });
-                        if (configurationName.equals("testCompile") || configurationName.equals(TEST_RUNTIME_CONFIGURATION)) { // tests aren't packaged, so we need to depend on compiled classes
-                            Object javaPlugin = projectDependency.getConvention().getPlugins().get(JAVA_PLUGIN_CONVENTION_NAME);
-                            //if the project of the dependency wasn't parsed yet, java plugin is not applyed, so we can't get it. Save for later.
-                            if (javaPlugin == null) {
-                                List<DepDef> moduleDeps = (List<DepDef>) projectDependency.getProperties().get(DEPENDENCIES_KEY);
-                                if (moduleDeps == null) {
-                                    moduleDeps = new ArrayList<DepDef>();
-                                    projectDependency.setProperty(DEPENDENCIES_KEY, moduleDeps);
-                                }
-                                moduleDeps.add(new DepDef(project, configurationName));
-                                dependency = null;
-                            } else {
-                                FileCollection testClasses = ((JavaPluginConvention) javaPlugin).getSourceSets().getByName("test").getOutput();
-                                dependency = new DefaultSelfResolvingDependency(testClasses);
-                            }
-                        } else {
-                            configurationName = ModuleDescriptor.DEFAULT_CONFIGURATION;
-                            dependency = new DefaultProjectDependency(projectDependency, configurationName, project.getGradle().getStartParameter().getProjectDependenciesBuildInstruction());
-                        }
-                    }
-                    if (dependency != null) {
-                        configuration.addDependency(dependency);
-                    }
+    /**
+     * The project of the dependency may not be configured yet, possibly on another thread, so its test classes are
+     * only looked up when the files, or the tasks building them, are asked for. The configuration is changed right
+     * away, by the project owning it.
+     */
+    private void addDependencyOnTestClasses(Configuration configuration, final Project projectDependency) {
+        FileCollection testClasses = project.files(new Callable<Object>() {
+            public Object call() {
+                JavaPluginConvention convention = (JavaPluginConvention) projectDependency.getConvention().getPlugins().get(JAVA_PLUGIN_CONVENTION_NAME);
+                if (convention == null) { //not a java module after all
+                    return Collections.emptyList();
                 }
+                return convention.getSourceSets().getByName(SourceSet.TEST_SOURCE_SET_NAME).getOutput();
             }
-        }
+        });
+        configuration.addDependency(new DefaultSelfResolvingDependency(testClasses));
     }
 
-    private void collectAllProjects(Project project, Set<Project> allProjects) {
-        allProjects.addAll(project.getAllprojects());
-        Project parent = project.getParent();
-        if (parent != null) {
-            collectAllProjects(parent, allProjects);
+    private void readMavenProject() throws PlexusContainerException, ComponentLookupException, SettingsBuildingException, MavenExecutionRequestPopulationException, ProjectBuildingException, IOException {
+        reactor = buildContext.getCachedReactor(defaultGlobalSettingsFile, defaultUserSettingsFile);
+        if (reactor == null) {
+            reactor = buildContext.getFastReactor(rootPom(), defaultGlobalSettingsFile, defaultUserSettingsFile);
+        }
+        if (reactor != null) {
+            mavenModule = reactor.getModule(project.getProjectDir());
+        }
+        if (mavenModule == null) { //cold cache and no fast read, or not a module of the root reactor, go through Maven
+            buildContainer();
+            readSettings();
+            buildMavenProject();
         }
     }
 
-    private void readMavenProject() throws ComponentLookupException, MavenExecutionRequestPopulationException, ProjectBuildingException {
+    private void buildMavenProject() throws ComponentLookupException, MavenExecutionRequestPopulationException, ProjectBuildingException, IOException {
         ProjectBuilder builder = container.lookup(ProjectBuilder.class);
         MavenExecutionRequest executionRequest = new DefaultMavenExecutionRequest();
         MavenExecutionRequestPopulator populator = container.lookup(MavenExecutionRequestPopulator.class);
@@ -312,32 +438,29 @@ public class GradleM2MetadataPlugin implements Plugin<Project> {
         populator.populateDefaults(executionRequest);
         ProjectBuildingRequest buildingRequest = executionRequest.getProjectBuildingRequest();
         buildingRequest.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
-        mavenProject = builder.build(new File(project.getProjectDir(), "pom.xml"), buildingRequest).getProject();
-        reactorProjects = transform(builder.build(ImmutableList.of(new File("pom.xml")), true, buildingRequest), new Function<ProjectBuildingResult, MavenProject>() {
-            public MavenProject apply(ProjectBuildingResult from) {
-                return from.getProject();
-            }
-        });
-        MavenExecutionResult result = new DefaultMavenExecutionResult();
-        result.setProject(mavenProject);
-        MavenSession session = new MavenSession(container, executionRequest, result);
-        session.setCurrentProject(mavenProject);
+        reactor = readReactor(builder, buildingRequest);
+        mavenModule = reactor.getModule(project.getProjectDir());
+        if (mavenModule == null) { //not a module of the root reactor, read it on its own
+            mavenModule = ModuleSnapshot.of(builder.build(new File(project.getProjectDir(), POM_FILE_NAME), buildingRequest).getProject());
+            profiler.count(ConfigurationProfiler.POMS_PARSED, 1);
+        }
     }
 
-    private void buildContainer() throws PlexusContainerException {
-        ContainerConfiguration containerConfiguration = new DefaultContainerConfiguration()
-                .setClassWorld(new ClassWorld("plexus.core", this.getClass().getClassLoader()))
-                .setName("mavenCore");
-        container = new DefaultPlexusContainer(containerConfiguration);
+    private MavenReactor readReactor(ProjectBuilder builder, ProjectBuildingRequest buildingRequest) throws ProjectBuildingException, IOException {
+        return buildContext.getReactor(rootPom(), builder, buildingRequest);
     }
 
-    private static class DepDef {
-        public final Project project;
-        public final String configuration;
+    private File rootPom() {
+        File rootPom = new File(project.getRootProject().getProjectDir(), POM_FILE_NAME);
+        return rootPom.isFile() ? rootPom : new File(project.getProjectDir(), POM_FILE_NAME);
+    }
 
-        public DepDef(Project project, String configuration) {
-            this.configuration = configuration;
-            this.project = project;
+    private void buildContainer() throws PlexusContainerException {
+        ConfigurationProfiler.Phase phase = profiler.startNested("buildContainer");
+        try {
+            container = buildContext.getContainer();
+        } finally {
+            phase.stop();
         }
     }
 }
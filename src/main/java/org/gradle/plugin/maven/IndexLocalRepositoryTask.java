@@ -0,0 +1,56 @@
+package org.gradle.plugin.maven;
+
+import org.apache.maven.settings.Settings;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Indexes the artifacts of the Maven local repository, so the following builds can serve dependencies from it first
+ * and, in offline mode, fail fast on the ones missing from it.
+ */
+public class IndexLocalRepositoryTask extends DefaultTask {
+
+    private File localRepository;
+    private File indexFile;
+
+    /**
+     * @return the local repository to index, the one configured in the Maven settings by default
+     */
+    public File getLocalRepository() {
+        if (localRepository == null) {
+            Settings settings;
+            try {
+                settings = MavenBuildContext.get(getProject()).getSettings(MavenBuildContext.defaultGlobalSettingsFile(), MavenBuildContext.defaultUserSettingsFile());
+            } catch (Exception e) {
+                throw new GradleException("failed to read Maven settings", e);
+            }
+            String path = settings.getLocalRepository();
+            localRepository = path == null ? new File(new File(System.getProperty("user.home"), ".m2"), "repository") : new File(path);
+        }
+        return localRepository;
+    }
+
+    public void setLocalRepository(File localRepository) {
+        this.localRepository = localRepository;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    public void setIndexFile(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    @TaskAction
+    public void index() throws IOException {
+        File repository = getLocalRepository().getAbsoluteFile();
+        long start = System.currentTimeMillis();
+        int count = LocalRepositoryIndex.write(repository, getIndexFile());
+        getLogger().lifecycle("Indexed {} artifacts of {} in {} ms", new Object[]{count, repository, System.currentTimeMillis() - start});
+    }
+}
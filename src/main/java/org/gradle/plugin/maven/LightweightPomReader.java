@@ -0,0 +1,600 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a reactor straight from the POM files with a streaming parser, for the fast mode. It handles the part of the
+ * model the plugin uses, parent inheritance, dependencyManagement and ${property} interpolation, without starting
+ * Plexus or loading the Maven model builder.
+ * <p/>
+ * Anything it can't handle the way Maven would, like profiles, imported BOMs, parents that aren't on disk, properties
+ * it can't resolve or dependencies on other artifacts than the plain jar, throws {@link UnsupportedPomException}, on
+ * which the plugin falls back to Maven's project builder.
+ */
+class LightweightPomReader {
+
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String DEFAULT_PARENT_RELATIVE_PATH = "../" + POM_FILE_NAME;
+    private static final String DEFAULT_PACKAGING = "jar";
+    private static final String DEFAULT_DEPENDENCY_TYPE = "jar";
+    private static final String DEFAULT_PLUGIN_GROUP_ID = "org.apache.maven.plugins";
+    private static final String MAVEN_COMPILER_PLUGIN_KEY = DEFAULT_PLUGIN_GROUP_ID + ":maven-compiler-plugin";
+    private static final String MAVEN_SOURCE_PLUGIN_KEY = DEFAULT_PLUGIN_GROUP_ID + ":maven-source-plugin";
+    private static final String IMPORT_SCOPE = "import";
+    private static final ModuleSnapshot.Repository CENTRAL = new ModuleSnapshot.Repository("central", "http://repo1.maven.org/maven2");
+    private static final int MAX_INTERPOLATION_DEPTH = 20;
+
+    private final Map<String, String> userProperties;
+    private final Map<File, RawPom> pomsByFile = new HashMap<File, RawPom>();
+
+    /**
+     * @param userProperties the -D properties of the build, which override the properties of the POMs as in Maven
+     */
+    LightweightPomReader(Map<String, String> userProperties) {
+        this.userProperties = userProperties;
+    }
+
+    /**
+     * @return whether the settings file activates profiles, by activeProfiles or activation conditions, which this
+     *         reader doesn't take into account
+     */
+    static boolean declaresActiveProfiles(File settingsFile) throws IOException {
+        if (!settingsFile.isFile()) {
+            return false;
+        }
+        final boolean[] found = new boolean[1];
+        parse(settingsFile, new ElementHandler() {
+            public void start(String path) {
+                if (path.equals("settings/activeProfiles/activeProfile") || path.equals("settings/profiles/profile/activation")) {
+                    found[0] = true;
+                }
+            }
+
+            public void end(String path, String text) {
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * @return the modules the POM declares, as written, or null if it declares profiles, which may declare more
+     */
+    static List<String> declaredModules(File pomFile) throws IOException {
+        RawPom pom = new RawPom(pomFile);
+        parse(pomFile, pom);
+        return pom.profiles ? null : pom.modules;
+    }
+
+    /**
+     * Reads the POM and, recursively, the modules it aggregates, parent first in the order of the module declarations
+     * like the Maven reactor build.
+     */
+    List<ModuleSnapshot> readReactor(File rootPom) throws IOException, UnsupportedPomException {
+        ImmutableList.Builder<ModuleSnapshot> modules = ImmutableList.builder();
+        readModule(rootPom.getCanonicalFile(), modules, new HashSet<File>());
+        return modules.build();
+    }
+
+    private void readModule(File pomFile, ImmutableList.Builder<ModuleSnapshot> modules, Set<File> visited) throws IOException, UnsupportedPomException {
+        if (!visited.add(pomFile)) { //Maven reports these as errors, let it
+            throw new UnsupportedPomException(pomFile, "is aggregated more than once or in a cycle");
+        }
+        RawPom pom = read(pomFile);
+        modules.add(snapshot(pom));
+        for (String module : pom.modules) {
+            File moduleFile = new File(pomFile.getParentFile(), module.replace('\\', File.separatorChar));
+            if (moduleFile.isDirectory()) {
+                moduleFile = new File(moduleFile, POM_FILE_NAME);
+            }
+            readModule(moduleFile.getCanonicalFile(), modules, visited);
+        }
+    }
+
+    private ModuleSnapshot snapshot(RawPom pom) throws IOException, UnsupportedPomException {
+        List<RawPom> lineage = lineage(pom);
+        Map<String, String> properties = new HashMap<String, String>();
+        for (int i = lineage.size() - 1; i >= 0; i--) {
+            properties.putAll(lineage.get(i).properties);
+        }
+        String groupId = groupId(pom);
+        String version = version(pom);
+        Interpolator interpolator = new Interpolator(pom, groupId, version, properties);
+
+        Map<String, RawDependency> managedDependencies = new LinkedHashMap<String, RawDependency>();
+        Map<String, RawDependency> dependencies = new LinkedHashMap<String, RawDependency>();
+        Map<String, ModuleSnapshot.Repository> repositories = new LinkedHashMap<String, ModuleSnapshot.Repository>();
+        Map<String, RawPlugin> plugins = new HashMap<String, RawPlugin>();
+        Map<String, RawPlugin> managedPlugins = new HashMap<String, RawPlugin>();
+        for (RawPom current : lineage) { //the child comes first and wins
+            boolean inherited = current != pom;
+            for (RawDependency dependency : current.managedDependencies) {
+                RawDependency interpolated = dependency.interpolate(interpolator);
+                if (IMPORT_SCOPE.equals(interpolated.scope)) {
+                    throw new UnsupportedPomException(current.file, "imports the BOM " + interpolated.key());
+                }
+                putIfAbsent(managedDependencies, interpolated.key(), interpolated);
+            }
+            for (RawDependency dependency : current.dependencies) {
+                RawDependency interpolated = dependency.interpolate(interpolator);
+                putIfAbsent(dependencies, interpolated.key(), interpolated);
+            }
+            for (ModuleSnapshot.Repository repository : current.repositories) {
+                String id = interpolator.interpolate(repository.getId());
+                putIfAbsent(repositories, id, new ModuleSnapshot.Repository(id, interpolator.interpolate(repository.getUrl())));
+            }
+            for (RawPlugin plugin : current.plugins) {
+                if (!inherited || plugin.inherited) {
+                    merge(plugins, plugin, interpolator);
+                }
+            }
+            for (RawPlugin plugin : current.managedPlugins) {
+                merge(managedPlugins, plugin, interpolator);
+            }
+        }
+        putIfAbsent(repositories, CENTRAL.getId(), CENTRAL);
+
+        ImmutableList.Builder<ModuleSnapshot.Dependency> moduleDependencies = ImmutableList.builder();
+        for (RawDependency dependency : dependencies.values()) {
+            if (!DEFAULT_DEPENDENCY_TYPE.equals(dependency.type()) || dependency.classifier != null) {
+                throw new UnsupportedPomException(pom.file, "depends on " + dependency.key() + ", which isn't a plain jar");
+            }
+            RawDependency managed = managedDependencies.get(dependency.key());
+            String dependencyVersion = dependency.version != null ? dependency.version : managed == null ? null : managed.version;
+            if (dependencyVersion == null) {
+                throw new UnsupportedPomException(pom.file, "doesn't declare the version of " + dependency.key());
+            }
+            String scope = dependency.scope != null ? dependency.scope : managed == null ? null : managed.scope;
+            String systemPath = dependency.systemPath != null ? dependency.systemPath : managed == null ? null : managed.systemPath;
+            List<String[]> exclusions = !dependency.exclusions.isEmpty() || managed == null ? dependency.exclusions : managed.exclusions;
+            moduleDependencies.add(new ModuleSnapshot.Dependency(dependency.groupId, dependency.artifactId, dependencyVersion, scope, systemPath, exclusions(exclusions)));
+        }
+        ImmutableList.Builder<String> managedVersions = ImmutableList.builder();
+        for (RawDependency managed : managedDependencies.values()) {
+            if (managed.version != null) {
+                managedVersions.add(managed.groupId + ':' + managed.artifactId + ':' + managed.version);
+            }
+        }
+        ImmutableList.Builder<File> pomFiles = ImmutableList.builder();
+        for (RawPom current : lineage) {
+            pomFiles.add(current.file);
+        }
+        RawPlugin compilerPlugin = plugins.get(MAVEN_COMPILER_PLUGIN_KEY);
+        RawPlugin managedCompilerPlugin = managedPlugins.get(MAVEN_COMPILER_PLUGIN_KEY);
+        String compilerSource = compilerPlugin != null && compilerPlugin.source != null ? compilerPlugin.source : managedCompilerPlugin == null ? null : managedCompilerPlugin.source;
+        String compilerTarget = compilerPlugin != null && compilerPlugin.target != null ? compilerPlugin.target : managedCompilerPlugin == null ? null : managedCompilerPlugin.target;
+        String packaging = pom.packaging == null ? DEFAULT_PACKAGING : interpolator.interpolate(pom.packaging);
+        String interpolatedVersion = interpolator.interpolate(version);
+        return new ModuleSnapshot(interpolator.interpolate(groupId), interpolator.interpolate(pom.artifactId), interpolatedVersion,
+                packaging, pom.file.getParentFile(), ArtifactUtils.isSnapshot(interpolatedVersion), moduleDependencies.build(),
+                ImmutableList.copyOf(repositories.values()), compilerSource, compilerTarget, plugins.containsKey(MAVEN_SOURCE_PLUGIN_KEY),
+                pomFiles.build(), ImmutableList.copyOf(pom.modules), managedVersions.build(), ImmutableList.<String>of()); //imports fall back to Maven
+    }
+
+    private static List<ModuleSnapshot.Exclusion> exclusions(List<String[]> exclusions) {
+        ImmutableList.Builder<ModuleSnapshot.Exclusion> moduleExclusions = ImmutableList.builder();
+        for (String[] exclusion : exclusions) {
+            moduleExclusions.add(ModuleSnapshot.exclusion(exclusion[0], exclusion[1]));
+        }
+        return moduleExclusions.build();
+    }
+
+    private static void merge(Map<String, RawPlugin> plugins, RawPlugin plugin, Interpolator interpolator) throws UnsupportedPomException {
+        String key = (plugin.groupId == null ? DEFAULT_PLUGIN_GROUP_ID : plugin.groupId) + ':' + plugin.artifactId;
+        RawPlugin existing = plugins.get(key);
+        if (existing == null) {
+            existing = new RawPlugin();
+            plugins.put(key, existing);
+        }
+        if (existing.source == null) {
+            existing.source = interpolator.interpolate(plugin.source);
+        }
+        if (existing.target == null) {
+            existing.target = interpolator.interpolate(plugin.target);
+        }
+    }
+
+    private static <V> void putIfAbsent(Map<String, V> map, String key, V value) {
+        if (!map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * @return the POM followed by its parents
+     */
+    private List<RawPom> lineage(RawPom pom) throws IOException, UnsupportedPomException {
+        List<RawPom> lineage = new ArrayList<RawPom>();
+        for (RawPom current = pom; current != null; current = parent(current)) {
+            if (lineage.contains(current)) {
+                throw new UnsupportedPomException(pom.file, "has a cycle in its parents");
+            }
+            lineage.add(current);
+        }
+        return lineage;
+    }
+
+    private RawPom parent(RawPom pom) throws IOException, UnsupportedPomException {
+        if (pom.parentArtifactId == null) {
+            return null;
+        }
+        File parentFile = new File(pom.file.getParentFile(), pom.parentRelativePath == null ? DEFAULT_PARENT_RELATIVE_PATH : pom.parentRelativePath);
+        if (parentFile.isDirectory()) {
+            parentFile = new File(parentFile, POM_FILE_NAME);
+        }
+        if (parentFile.isFile()) {
+            RawPom parent = read(parentFile.getCanonicalFile());
+            if (pom.parentArtifactId.equals(parent.artifactId) && groupId(parent).equals(pom.parentGroupId)) {
+                if (!version(parent).equals(pom.parentVersion)) { //Maven gets the declared version from a repository
+                    throw new UnsupportedPomException(pom.file, "inherits from version " + pom.parentVersion + " of " + pom.parentGroupId + ':'
+                            + pom.parentArtifactId + ", but version " + version(parent) + " is at its relative path");
+                }
+                return parent;
+            }
+        }
+        throw new UnsupportedPomException(pom.file, "inherits from " + pom.parentGroupId + ':' + pom.parentArtifactId + ", which isn't at its relative path");
+    }
+
+    private static String groupId(RawPom pom) throws UnsupportedPomException {
+        String groupId = pom.groupId == null ? pom.parentGroupId : pom.groupId;
+        if (groupId == null) {
+            throw new UnsupportedPomException(pom.file, "has no groupId");
+        }
+        return groupId;
+    }
+
+    private static String version(RawPom pom) throws UnsupportedPomException {
+        String version = pom.version == null ? pom.parentVersion : pom.version;
+        if (version == null) {
+            throw new UnsupportedPomException(pom.file, "has no version");
+        }
+        return version;
+    }
+
+    private RawPom read(File pomFile) throws IOException, UnsupportedPomException {
+        RawPom pom = pomsByFile.get(pomFile);
+        if (pom == null) {
+            pom = new RawPom(pomFile);
+            parse(pomFile, pom);
+            if (pom.profiles) {
+                throw new UnsupportedPomException(pomFile, "declares profiles");
+            }
+            if (pom.artifactId == null) {
+                throw new UnsupportedPomException(pomFile, "has no artifactId");
+            }
+            pomsByFile.put(pomFile, pom);
+        }
+        return pom;
+    }
+
+    /**
+     * Streams the elements of the XML file to the handler, by path from the root element, like project/parent/version.
+     */
+    private static void parse(File file, ElementHandler handler) throws IOException {
+        Reader reader = ReaderFactory.newXmlReader(file);
+        try {
+            XmlPullParser parser = new MXParser();
+            parser.setInput(reader);
+            StringBuilder path = new StringBuilder();
+            StringBuilder text = new StringBuilder();
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG) {
+                    if (path.length() > 0) {
+                        path.append('/');
+                    }
+                    path.append(parser.getName());
+                    text.setLength(0);
+                    handler.start(path.toString());
+                } else if (event == XmlPullParser.TEXT) {
+                    text.append(parser.getText());
+                } else if (event == XmlPullParser.END_TAG) {
+                    handler.end(path.toString(), text.toString().trim());
+                    text.setLength(0);
+                    int separator = path.lastIndexOf("/");
+                    path.setLength(separator < 0 ? 0 : separator);
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw (IOException) new IOException("Failed to parse " + file + ": " + e.getMessage()).initCause(e);
+        } finally {
+            IOUtil.close(reader);
+        }
+    }
+
+    private interface ElementHandler {
+        void start(String path);
+
+        void end(String path, String text);
+    }
+
+    /**
+     * Thrown on a POM the reader can't handle the way Maven would.
+     */
+    static class UnsupportedPomException extends Exception {
+        UnsupportedPomException(File pomFile, String reason) {
+            super(pomFile + " " + reason);
+        }
+    }
+
+    /**
+     * Resolves ${property} expressions the way Maven does: project values first, then the -D properties, the POM
+     * properties (inherited ones included) and the system properties. The reactor is cached by the -D properties and
+     * a few system properties only, so other system properties and the environment aren't resolved.
+     */
+    private class Interpolator {
+        private final RawPom pom;
+        private final String groupId;
+        private final String version;
+        private final Map<String, String> properties;
+
+        Interpolator(RawPom pom, String groupId, String version, Map<String, String> properties) {
+            this.pom = pom;
+            this.groupId = groupId;
+            this.version = version;
+            this.properties = properties;
+        }
+
+        String interpolate(String value) throws UnsupportedPomException {
+            return interpolate(value, 0);
+        }
+
+        private String interpolate(String value, int depth) throws UnsupportedPomException {
+            if (value == null || value.indexOf("${") < 0) {
+                return value;
+            }
+            if (depth > MAX_INTERPOLATION_DEPTH) {
+                throw new UnsupportedPomException(pom.file, "has a cycle in the properties of " + value);
+            }
+            StringBuilder result = new StringBuilder(value.length());
+            int start = 0;
+            for (int expression = value.indexOf("${"); expression >= 0; expression = value.indexOf("${", start)) {
+                int end = value.indexOf('}', expression);
+                if (end < 0) {
+                    break;
+                }
+                result.append(value, start, expression);
+                String name = value.substring(expression + 2, end);
+                String resolved = resolve(name);
+                if (resolved == null) {
+                    throw new UnsupportedPomException(pom.file, "uses the property " + name + ", which can't be resolved without Maven");
+                }
+                result.append(interpolate(resolved, depth + 1));
+                start = end + 1;
+            }
+            result.append(value, start, value.length());
+            return result.toString();
+        }
+
+        private String resolve(String name) throws UnsupportedPomException {
+            if (name.equals("basedir") || name.equals("project.basedir") || name.equals("pom.basedir")) {
+                return pom.file.getParentFile().getPath();
+            }
+            if (name.startsWith("project.") || name.startsWith("pom.")) {
+                String field = name.substring(name.indexOf('.') + 1);
+                if (field.equals("groupId")) {
+                    return groupId;
+                } else if (field.equals("artifactId")) {
+                    return pom.artifactId;
+                } else if (field.equals("version")) {
+                    return version;
+                } else if (field.equals("packaging")) {
+                    return pom.packaging == null ? DEFAULT_PACKAGING : pom.packaging;
+                } else if (field.equals("parent.groupId")) {
+                    return pom.parentGroupId;
+                } else if (field.equals("parent.artifactId")) {
+                    return pom.parentArtifactId;
+                } else if (field.equals("parent.version")) {
+                    return pom.parentVersion;
+                }
+                return null;
+            }
+            if (userProperties.containsKey(name)) {
+                return userProperties.get(name);
+            }
+            if (properties.containsKey(name)) {
+                return properties.get(name);
+            }
+            if (name.startsWith("env.")) {
+                throw new UnsupportedPomException(pom.file, "uses the environment variable " + name.substring(4) + ", which the Maven metadata cache doesn't track");
+            }
+            if (!MetadataCache.isKeyedSystemProperty(name) && System.getProperty(name) != null) {
+                throw new UnsupportedPomException(pom.file, "uses the system property " + name + ", which the Maven metadata cache doesn't track");
+            }
+            return System.getProperty(name);
+        }
+    }
+
+    /**
+     * A POM as written, before inheritance and interpolation.
+     */
+    private static class RawPom implements ElementHandler {
+        private static final String DEPENDENCY = "project/dependencies/dependency";
+        private static final String MANAGED_DEPENDENCY = "project/dependencyManagement/dependencies/dependency";
+        private static final String REPOSITORY = "project/repositories/repository";
+        private static final String PLUGIN = "project/build/plugins/plugin";
+        private static final String MANAGED_PLUGIN = "project/build/pluginManagement/plugins/plugin";
+        private static final String PROPERTIES = "project/properties/";
+
+        private final File file;
+        private String groupId;
+        private String artifactId;
+        private String version;
+        private String packaging;
+        private String parentGroupId;
+        private String parentArtifactId;
+        private String parentVersion;
+        private String parentRelativePath;
+        private boolean profiles;
+        private final Map<String, String> properties = new HashMap<String, String>();
+        private final List<String> modules = new ArrayList<String>();
+        private final List<RawDependency> dependencies = new ArrayList<RawDependency>();
+        private final List<RawDependency> managedDependencies = new ArrayList<RawDependency>();
+        private final List<ModuleSnapshot.Repository> repositories = new ArrayList<ModuleSnapshot.Repository>();
+        private final List<RawPlugin> plugins = new ArrayList<RawPlugin>();
+        private final List<RawPlugin> managedPlugins = new ArrayList<RawPlugin>();
+        private RawDependency dependency;
+        private String[] exclusion;
+        private String repositoryId;
+        private String repositoryUrl;
+        private RawPlugin plugin;
+
+        RawPom(File file) {
+            this.file = file;
+        }
+
+        public void start(String path) {
+            if (path.equals(DEPENDENCY) || path.equals(MANAGED_DEPENDENCY)) {
+                dependency = new RawDependency();
+            } else if (path.equals(DEPENDENCY + "/exclusions/exclusion") || path.equals(MANAGED_DEPENDENCY + "/exclusions/exclusion")) {
+                exclusion = new String[2];
+            } else if (path.equals(PLUGIN) || path.equals(MANAGED_PLUGIN)) {
+                plugin = new RawPlugin();
+            } else if (path.equals("project/profiles")) {
+                profiles = true;
+            }
+        }
+
+        public void end(String path, String text) {
+            if (path.equals(DEPENDENCY)) {
+                dependencies.add(dependency);
+            } else if (path.equals(MANAGED_DEPENDENCY)) {
+                managedDependencies.add(dependency);
+            } else if (path.startsWith(DEPENDENCY) || path.startsWith(MANAGED_DEPENDENCY)) {
+                dependencyElement(path.substring(path.indexOf("/dependency/") + "/dependency/".length()), text);
+            } else if (path.equals(REPOSITORY)) {
+                repositories.add(new ModuleSnapshot.Repository(repositoryId, repositoryUrl));
+                repositoryId = null;
+                repositoryUrl = null;
+            } else if (path.equals(REPOSITORY + "/id")) {
+                repositoryId = text;
+            } else if (path.equals(REPOSITORY + "/url")) {
+                repositoryUrl = text;
+            } else if (path.equals(PLUGIN)) {
+                plugins.add(plugin);
+            } else if (path.equals(MANAGED_PLUGIN)) {
+                managedPlugins.add(plugin);
+            } else if (path.startsWith(PLUGIN + '/') || path.startsWith(MANAGED_PLUGIN + '/')) {
+                pluginElement(path.substring(path.indexOf("/plugin/") + "/plugin/".length()), text);
+            } else if (path.startsWith(PROPERTIES) && path.indexOf('/', PROPERTIES.length()) < 0) {
+                properties.put(path.substring(PROPERTIES.length()), text);
+            } else if (path.equals("project/modules/module")) {
+                modules.add(text);
+            } else if (path.equals("project/groupId")) {
+                groupId = text;
+            } else if (path.equals("project/artifactId")) {
+                artifactId = text;
+            } else if (path.equals("project/version")) {
+                version = text;
+            } else if (path.equals("project/packaging")) {
+                packaging = text;
+            } else if (path.equals("project/parent/groupId")) {
+                parentGroupId = text;
+            } else if (path.equals("project/parent/artifactId")) {
+                parentArtifactId = text;
+            } else if (path.equals("project/parent/version")) {
+                parentVersion = text;
+            } else if (path.equals("project/parent/relativePath")) {
+                parentRelativePath = text;
+            }
+        }
+
+        private void dependencyElement(String element, String text) {
+            if (element.equals("groupId")) {
+                dependency.groupId = text;
+            } else if (element.equals("artifactId")) {
+                dependency.artifactId = text;
+            } else if (element.equals("version")) {
+                dependency.version = text;
+            } else if (element.equals("type")) {
+                dependency.type = text;
+            } else if (element.equals("classifier")) {
+                dependency.classifier = text;
+            } else if (element.equals("scope")) {
+                dependency.scope = text;
+            } else if (element.equals("systemPath")) {
+                dependency.systemPath = text;
+            } else if (element.equals("exclusions/exclusion/groupId")) {
+                exclusion[0] = text;
+            } else if (element.equals("exclusions/exclusion/artifactId")) {
+                exclusion[1] = text;
+            } else if (element.equals("exclusions/exclusion")) {
+                dependency.exclusions.add(exclusion);
+            }
+        }
+
+        private void pluginElement(String element, String text) {
+            if (element.equals("groupId")) {
+                plugin.groupId = text;
+            } else if (element.equals("artifactId")) {
+                plugin.artifactId = text;
+            } else if (element.equals("inherited")) {
+                plugin.inherited = Boolean.valueOf(text);
+            } else if (element.equals("configuration/source")) {
+                plugin.source = text;
+            } else if (element.equals("configuration/target")) {
+                plugin.target = text;
+            }
+        }
+    }
+
+    private static class RawDependency {
+        private String groupId;
+        private String artifactId;
+        private String version;
+        private String type;
+        private String classifier;
+        private String scope;
+        private String systemPath;
+        private List<String[]> exclusions = new ArrayList<String[]>();
+
+        String type() {
+            return type == null ? DEFAULT_DEPENDENCY_TYPE : type;
+        }
+
+        /**
+         * @return the management key of the dependency, as in Maven: group:name:type, followed by the classifier if any
+         */
+        String key() {
+            return groupId + ':' + artifactId + ':' + type() + (classifier == null ? "" : ':' + classifier);
+        }
+
+        RawDependency interpolate(Interpolator interpolator) throws UnsupportedPomException {
+            RawDependency interpolated = new RawDependency();
+            interpolated.groupId = interpolator.interpolate(groupId);
+            interpolated.artifactId = interpolator.interpolate(artifactId);
+            interpolated.version = interpolator.interpolate(version);
+            interpolated.type = interpolator.interpolate(type);
+            interpolated.classifier = interpolator.interpolate(classifier);
+            interpolated.scope = interpolator.interpolate(scope);
+            interpolated.systemPath = interpolator.interpolate(systemPath);
+            for (String[] exclusion : exclusions) {
+                interpolated.exclusions.add(new String[]{interpolator.interpolate(exclusion[0]), interpolator.interpolate(exclusion[1])});
+            }
+            return interpolated;
+        }
+    }
+
+    private static class RawPlugin {
+        private String groupId;
+        private String artifactId;
+        private boolean inherited = true;
+        private String source;
+        private String target;
+    }
+}
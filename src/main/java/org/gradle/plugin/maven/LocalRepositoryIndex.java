@@ -0,0 +1,207 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of the artifacts available in a Maven local repository, by groupId:artifactId:version. It is written once by
+ * the {@link IndexLocalRepositoryTask} and memory mapped by the builds using it, which look coordinates up with a
+ * binary search over the mapped file instead of asking remote repositories.
+ * <p/>
+ * The file holds a header, the offsets of the entries and the entries themselves, sorted by coordinates, each entry
+ * being the UTF-8 coordinates and the path of the artifact relative to the repository.
+ */
+class LocalRepositoryIndex {
+
+    private static final int MAGIC = 0x4d324958; //M2IX
+    private static final int FORMAT_VERSION = 1;
+    private static final String UTF_8 = "UTF-8";
+
+    private final File repository;
+    private final ByteBuffer entries;
+    private final int count;
+    private final int offsetsStart;
+    private final int entriesStart;
+
+    private LocalRepositoryIndex(File repository, ByteBuffer entries, int count, int offsetsStart) {
+        this.repository = repository;
+        this.entries = entries;
+        this.count = count;
+        this.offsetsStart = offsetsStart;
+        this.entriesStart = offsetsStart + count * 4;
+    }
+
+    /**
+     * Walks the repository and writes the index of every artifact found in it.
+     *
+     * @return the number of artifacts indexed
+     */
+    static int write(File repository, File indexFile) throws IOException {
+        Map<String, String> artifacts = new TreeMap<String, String>();
+        collect(repository, repository, artifacts);
+        Files.createParentDirs(indexFile);
+        //written aside and moved into place, never truncating an index a build may have mapped
+        File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            byte[] repositoryPath = bytes(repository.getAbsolutePath());
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(repositoryPath.length);
+            out.write(repositoryPath);
+            out.writeInt(artifacts.size());
+            int offset = 0;
+            for (Map.Entry<String, String> artifact : artifacts.entrySet()) {
+                out.writeInt(offset);
+                offset += 8 + bytes(artifact.getKey()).length + bytes(artifact.getValue()).length;
+            }
+            for (Map.Entry<String, String> artifact : artifacts.entrySet()) {
+                writeString(out, artifact.getKey());
+                writeString(out, artifact.getValue());
+            }
+            out.close();
+            out = null;
+            if (indexFile.exists() && !indexFile.delete()) {
+                throw new IOException("Can't delete " + indexFile);
+            }
+            Files.move(tempFile, indexFile);
+        } finally {
+            Closeables.closeQuietly(out);
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+        return artifacts.size();
+    }
+
+    /**
+     * Collects the artifacts of a repository laid out as groupId/path/artifactId/version/artifactId-version.ext. The
+     * jar is preferred over the POM when both are there, as the POM alone is all a pom packaged artifact has.
+     */
+    private static void collect(File repository, File dir, Map<String, String> artifacts) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collect(repository, file, artifacts);
+            } else {
+                File versionDir = file.getParentFile();
+                File artifactDir = versionDir.getParentFile();
+                File groupDir = artifactDir == null ? null : artifactDir.getParentFile();
+                if (groupDir == null || groupDir.equals(repository) || !groupDir.getPath().startsWith(repository.getPath())) {
+                    continue;
+                }
+                String version = versionDir.getName();
+                String artifactId = artifactDir.getName();
+                String baseName = artifactId + '-' + version;
+                String name = file.getName();
+                boolean jar = name.equals(baseName + ".jar");
+                if (jar || name.equals(baseName + ".pom")) {
+                    String groupId = groupDir.getPath().substring(repository.getPath().length() + 1).replace(File.separatorChar, '.');
+                    String coordinates = groupId + ':' + artifactId + ':' + version;
+                    if (jar || !artifacts.containsKey(coordinates)) {
+                        artifacts.put(coordinates, file.getPath().substring(repository.getPath().length() + 1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index, or null if there is no index file
+     */
+    static LocalRepositoryIndex read(File indexFile) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException(indexFile + " is not a local repository index, or was written by another version of the plugin");
+            }
+            File repository = new File(readString(buffer, buffer.position()));
+            int count = buffer.getInt(buffer.position() + 4 + buffer.getInt(buffer.position()));
+            int offsetsStart = buffer.position() + 8 + buffer.getInt(buffer.position());
+            return new LocalRepositoryIndex(repository, buffer, count, offsetsStart);
+        } finally {
+            file.close(); //the mapping stays valid
+        }
+    }
+
+    File getRepository() {
+        return repository;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the artifact file with the given coordinates, or null if it isn't in the repository
+     */
+    File find(String groupId, String artifactId, String version) {
+        String coordinates = groupId + ':' + artifactId + ':' + version;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = entriesStart + entries.getInt(offsetsStart + middle * 4);
+            int comparison = readString(entries, entry).compareTo(coordinates);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return new File(repository, readString(entries, entry + 4 + entries.getInt(entry)));
+            }
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = bytes(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string at an absolute position, leaving the buffer position alone so lookups
+     * can run concurrently.
+     */
+    private static String readString(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 4 + i);
+        }
+        try {
+            return new String(bytes, UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes(UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.building.DefaultSettingsBuildingRequest;
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.building.SettingsBuildingException;
+import org.apache.maven.settings.building.SettingsBuildingRequest;
+import org.codehaus.plexus.ContainerConfiguration;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusContainerException;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * State shared by all the projects the plugin is applied to during a single build: the Plexus container, the effective
+ * Maven settings and the reactor, possibly read from the on-disk {@link MetadataCache}. Everything is created lazily, by
+ * the first project that needs it, and released when the build finishes.
+ * <p/>
+ * Projects may be configured in parallel, so contexts are kept in a concurrent registry by build and the lazily created
+ * state is guarded by the context's lock. The Gradle projects are indexed by directory up front instead, so looking
+ * them up doesn't contend for it. Whatever it hands out (reactor, snapshots, index) is immutable or thread safe.
+ */
+class MavenBuildContext {
+
+    private static final ConcurrentMap<Gradle, MavenBuildContext> CONTEXTS = new ConcurrentHashMap<Gradle, MavenBuildContext>();
+
+    static final String INDEX_LOCAL_REPOSITORY_TASK_NAME = "indexLocalRepository";
+    private static final String LOCAL_REPOSITORY_INDEX_PATH = ".gradle/m2metadata/local-repository.idx";
+
+    private final Logger logger;
+    private DefaultPlexusContainer container;
+    private final Map<String, Settings> settingsCache = new HashMap<String, Settings>();
+    private MavenReactor reactor;
+    private MavenReactor cachedReactor;
+    private Set<ModuleSnapshot> staleModules;
+    private MetadataCache cache;
+    private boolean cacheChecked;
+    private boolean fastReactorTried;
+    private final Project rootProject;
+    private final Map<File, Project> projectsByDir;
+    private DeferredActions deferredActions;
+    private LocalRepositoryIndex localRepositoryIndex;
+    private boolean localRepositoryIndexChecked;
+    private final ConfigurationProfiler profiler;
+    private final File profileReport;
+    private final boolean offline;
+
+    private MavenBuildContext(Project rootProject) {
+        this.rootProject = rootProject;
+        this.logger = rootProject.getLogger();
+        String profileReportPath = PluginOptions.getString(rootProject, PluginOptions.PROFILE_REPORT);
+        this.profileReport = profileReportPath == null ? null : rootProject.file(profileReportPath);
+        this.profiler = new ConfigurationProfiler(profileReport != null || PluginOptions.isEnabled(rootProject, PluginOptions.PROFILE, false));
+        this.offline = PluginOptions.isEnabled(rootProject, PluginOptions.OFFLINE, false);
+        this.projectsByDir = indexProjects(rootProject);
+    }
+
+    /**
+     * All the projects exist once the settings are evaluated, before any plugin is applied, so they are indexed once
+     * and looked up without taking the context's lock. Projects sharing a directory are only found by the first of
+     * them, parents first.
+     */
+    private static Map<File, Project> indexProjects(Project rootProject) {
+        Map<File, Project> byDir = new HashMap<File, Project>();
+        for (Project project : rootProject.getAllprojects()) {
+            File projectDir;
+            try {
+                projectDir = project.getProjectDir().getCanonicalFile();
+            } catch (IOException e) {
+                throw new GradleException("Can't resolve the directory of " + project, e);
+            }
+            if (!byDir.containsKey(projectDir)) {
+                byDir.put(projectDir, project);
+            }
+        }
+        return ImmutableMap.copyOf(byDir);
+    }
+
+    /**
+     * @return the context of the build the project belongs to, created by the first project asking for it
+     */
+    static MavenBuildContext get(Project project) {
+        Project rootProject = project.getRootProject();
+        Gradle gradle = rootProject.getGradle();
+        MavenBuildContext context = CONTEXTS.get(gradle);
+        if (context == null) {
+            final MavenBuildContext created = new MavenBuildContext(rootProject);
+            context = CONTEXTS.putIfAbsent(gradle, created);
+            if (context == null) {
+                context = created;
+                gradle.addBuildListener(new BuildAdapter() {
+                    @Override
+                    public void buildFinished(BuildResult result) {
+                        created.report();
+                        created.release();
+                    }
+                });
+            }
+        }
+        return context;
+    }
+
+    static File defaultUserSettingsFile() {
+        return new File(new File(System.getProperty("user.home"), ".m2"), "settings.xml");
+    }
+
+    static File defaultGlobalSettingsFile() {
+        return new File(System.getProperty("maven.home", System.getProperty("user.dir", "")), "conf/settings.xml");
+    }
+
+    synchronized DefaultPlexusContainer getContainer() throws PlexusContainerException {
+        if (container == null) {
+            long start = System.currentTimeMillis();
+            ContainerConfiguration containerConfiguration = new DefaultContainerConfiguration()
+                    .setClassWorld(new ClassWorld("plexus.core", getClass().getClassLoader()))
+                    .setName("mavenCore");
+            container = new DefaultPlexusContainer(containerConfiguration);
+            logger.lifecycle("Plexus container initialised in {} ms", System.currentTimeMillis() - start);
+        }
+        return container;
+    }
+
+    /**
+     * The effective settings are cached by the paths and modification times of the settings files, so they are built
+     * only once per build unless the files change.
+     */
+    synchronized Settings getSettings(File globalSettingsFile, File userSettingsFile) throws PlexusContainerException, ComponentLookupException, SettingsBuildingException {
+        String key = settingsKey(globalSettingsFile) + File.pathSeparator + settingsKey(userSettingsFile);
+        Settings settings = settingsCache.get(key);
+        if (settings == null) {
+            long start = System.currentTimeMillis();
+            Properties props = new Properties();
+            props.putAll(System.getProperties());
+            Properties envVars = CommandLineUtils.getSystemEnvVars();
+            for (Map.Entry<Object, Object> objectObjectEntry : envVars.entrySet()) {
+                props.setProperty("env." + objectObjectEntry.getKey().toString(), objectObjectEntry.getValue().toString());
+            }
+            SettingsBuildingRequest request = new DefaultSettingsBuildingRequest();
+            request.setGlobalSettingsFile(globalSettingsFile);
+            request.setUserSettingsFile(userSettingsFile);
+            request.setSystemProperties(props);
+            settings = getContainer().lookup(SettingsBuilder.class).build(request).getEffectiveSettings();
+            settingsCache.put(key, settings);
+            logger.lifecycle("Maven settings read in {} ms", System.currentTimeMillis() - start);
+        }
+        return settings;
+    }
+
+    private static String settingsKey(File settingsFile) {
+        return settingsFile.getAbsolutePath() + "@" + settingsFile.lastModified();
+    }
+
+    /**
+     * @return the reactor kept from a previous build, or null if there is none or some POMs have changed since, in
+     *         which case {@link #getReactor} rebuilds what it needs to
+     */
+    synchronized MavenReactor getCachedReactor(File globalSettingsFile, File userSettingsFile) throws IOException {
+        if (reactor == null && !cacheChecked && PluginOptions.isEnabled(rootProject, PluginOptions.CACHE, true)) {
+            cacheChecked = true;
+            cache = MetadataCache.forBuild(rootProject, globalSettingsFile, userSettingsFile);
+            long start = System.currentTimeMillis();
+            ConfigurationProfiler.Phase phase = profiler.startNested("loadCache");
+            MetadataCache.Entry entry;
+            try {
+                entry = cache.load();
+            } finally {
+                phase.stop();
+            }
+            if (entry != null) {
+                if (entry.getChangedModules().isEmpty()) {
+                    reactor = entry.getReactor();
+                    logger.lifecycle("Maven reactor read from cache in {} ms", System.currentTimeMillis() - start);
+                } else {
+                    cachedReactor = entry.getReactor();
+                    staleModules = cachedReactor.withDependents(entry.getChangedModules());
+                }
+            }
+        }
+        return reactor;
+    }
+
+    /**
+     * Reads the reactor with the {@link LightweightPomReader}, which never starts Plexus.
+     *
+     * @return the reactor, or null if the reader can't handle it, in which case {@link #getReactor} has to build it
+     */
+    synchronized MavenReactor getFastReactor(File rootPom, File globalSettingsFile, File userSettingsFile) throws IOException {
+        if (reactor == null && !fastReactorTried && PluginOptions.isEnabled(rootProject, PluginOptions.FAST, false)) {
+            fastReactorTried = true;
+            if (LightweightPomReader.declaresActiveProfiles(globalSettingsFile) || LightweightPomReader.declaresActiveProfiles(userSettingsFile)) {
+                logger.info("Maven settings activate profiles, building the Maven reactor with Maven");
+                return null;
+            }
+            long start = System.currentTimeMillis();
+            ConfigurationProfiler.Phase phase = profiler.startNested("readReactorFast");
+            try {
+                reactor = new MavenReactor(new LightweightPomReader(rootProject.getGradle().getStartParameter().getSystemPropertiesArgs()).readReactor(rootPom));
+                logger.lifecycle("Maven reactor of {} modules read in {} ms", reactor.getModules().size(), System.currentTimeMillis() - start);
+                profiler.count(ConfigurationProfiler.POMS_PARSED, reactor.getModules().size());
+            } catch (LightweightPomReader.UnsupportedPomException e) {
+                logger.lifecycle("Building the Maven reactor with Maven, as {}", e.getMessage());
+                return null;
+            } finally {
+                phase.stop();
+            }
+            cachedReactor = null;
+            staleModules = null;
+            if (cache != null) {
+                cache.store(reactor);
+            }
+        }
+        return reactor;
+    }
+
+    /**
+     * Builds the reactor, or only the modules of the cached one whose POMs have changed and the modules depending on
+     * them when there is one. If those can't be built on their own, the whole reactor is built instead.
+     */
+    synchronized MavenReactor getReactor(File rootPom, ProjectBuilder builder, ProjectBuildingRequest buildingRequest) throws ProjectBuildingException, IOException {
+        if (reactor == null && cachedReactor != null) {
+            long start = System.currentTimeMillis();
+            ConfigurationProfiler.Phase phase = profiler.startNested("rebuildModules");
+            try {
+                reactor = cachedReactor.rebuild(staleModules, builder, buildingRequest);
+                logger.lifecycle("Rebuilt {} of {} Maven modules in {} ms", new Object[]{staleModules.size(), reactor.getModules().size(), System.currentTimeMillis() - start});
+                profiler.count(ConfigurationProfiler.POMS_PARSED, staleModules.size());
+            } catch (ProjectBuildingException e) {
+                //modules rebuilt on their own don't see the reactor's model pool, the whole reactor build below does
+                logger.lifecycle("Failed to rebuild the changed Maven modules ({}), building the whole reactor", e.getMessage());
+            } finally {
+                phase.stop();
+            }
+            cachedReactor = null;
+            staleModules = null;
+            if (reactor != null) {
+                cache.store(reactor);
+            }
+        }
+        if (reactor == null) {
+            long start = System.currentTimeMillis();
+            ConfigurationProfiler.Phase phase = profiler.startNested("buildReactor");
+            try {
+                if (PluginOptions.isEnabled(rootProject, PluginOptions.PARALLEL, false)) {
+                    int threads = PluginOptions.getInt(rootProject, PluginOptions.THREADS, Runtime.getRuntime().availableProcessors());
+                    try {
+                        reactor = MavenReactor.buildInParallel(rootPom, builder, buildingRequest, threads, logger);
+                        logger.lifecycle("Maven reactor of {} modules built in {} ms on {} threads", new Object[]{reactor.getModules().size(), System.currentTimeMillis() - start, threads});
+                    } catch (ProjectBuildingException e) {
+                        //a module's parent may only be found in the reactor's model pool, which the serial build has
+                        logger.lifecycle("Failed to build the Maven reactor in parallel ({}), building it serially", e.getMessage());
+                        reactor = MavenReactor.build(rootPom, builder, buildingRequest);
+                        logger.lifecycle("Maven reactor of {} modules built in {} ms", reactor.getModules().size(), System.currentTimeMillis() - start);
+                    }
+                } else {
+                    reactor = MavenReactor.build(rootPom, builder, buildingRequest);
+                    logger.lifecycle("Maven reactor of {} modules built in {} ms", reactor.getModules().size(), System.currentTimeMillis() - start);
+                }
+                profiler.count(ConfigurationProfiler.POMS_PARSED, reactor.getModules().size());
+            } finally {
+                phase.stop();
+            }
+            if (cache != null) {
+                cache.store(reactor);
+            }
+        }
+        return reactor;
+    }
+
+    /**
+     * @return the Gradle project living in the given directory, or null if there is none
+     */
+    Project getGradleProject(File projectDir) throws IOException {
+        return projectsByDir.get(projectDir.getCanonicalFile());
+    }
+
+    synchronized DeferredActions getDeferredActions() {
+        if (deferredActions == null) {
+            deferredActions = new DeferredActions(PluginOptions.isEnabled(rootProject, PluginOptions.LAZY, false));
+        }
+        return deferredActions;
+    }
+
+    File getLocalRepositoryIndexFile() {
+        return new File(rootProject.getProjectDir(), LOCAL_REPOSITORY_INDEX_PATH);
+    }
+
+    /**
+     * @return whether the index task is among the tasks the build was started with
+     */
+    boolean isIndexTaskRequested() {
+        for (String taskName : rootProject.getGradle().getStartParameter().getTaskNames()) {
+            if (taskName.equals(INDEX_LOCAL_REPOSITORY_TASK_NAME) || taskName.endsWith(':' + INDEX_LOCAL_REPOSITORY_TASK_NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The index isn't mapped by the build running the index task, which replaces the file.
+     *
+     * @return the index written by the last run of the index task, or null if it never ran or is being rewritten
+     */
+    synchronized LocalRepositoryIndex getLocalRepositoryIndex() throws IOException {
+        if (!localRepositoryIndexChecked) {
+            localRepositoryIndexChecked = true;
+            if (isIndexTaskRequested()) {
+                logger.info("Not using the local repository index, {} is going to rewrite it", INDEX_LOCAL_REPOSITORY_TASK_NAME);
+                return null;
+            }
+            localRepositoryIndex = LocalRepositoryIndex.read(getLocalRepositoryIndexFile());
+            if (localRepositoryIndex != null) {
+                logger.info("Serving dependencies from {} first, {} artifacts indexed", localRepositoryIndex.getRepository(), localRepositoryIndex.size());
+            }
+        }
+        return localRepositoryIndex;
+    }
+
+    boolean isOffline() {
+        return offline;
+    }
+
+    ConfigurationProfiler getProfiler() {
+        return profiler;
+    }
+
+    private void report() {
+        profiler.report(logger);
+        if (profileReport != null) {
+            try {
+                profiler.writeJson(profileReport);
+                logger.lifecycle("Maven metadata configuration profile written to {}", profileReport);
+            } catch (IOException e) {
+                logger.warn("Failed to write the Maven metadata configuration profile to " + profileReport, e);
+            }
+        }
+    }
+
+    /**
+     * Releases everything and removes the context from the registry, so the next project asking for one starts afresh.
+     */
+    synchronized void release() {
+        CONTEXTS.remove(rootProject.getGradle(), this);
+        if (container != null) {
+            container.dispose();
+            container = null;
+        }
+        settingsCache.clear();
+        reactor = null;
+        cachedReactor = null;
+        staleModules = null;
+        cache = null;
+        cacheChecked = false;
+        fastReactorTried = false;
+        deferredActions = null;
+        localRepositoryIndex = null;
+        localRepositoryIndexChecked = false;
+    }
+}
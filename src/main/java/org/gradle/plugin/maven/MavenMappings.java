@@ -0,0 +1,139 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.collect.ImmutableMap;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How Maven packagings map to Gradle plugins and Maven scopes to Gradle configurations, shared by all the projects of a
+ * build. Packagings other than the default jar, war, ejb, bundle and pom can be added from the root build script,
+ * before the plugin is applied:
+ * <pre>
+ * org.gradle.plugin.maven.MavenMappings.get(project).packaging('hk2-jar', 'java')
+ * org.gradle.plugin.maven.MavenMappings.get(project).scope('war', 'system', 'compile')
+ * </pre>
+ * Scopes that aren't mapped for a packaging fall back as described in {@link MavenScope}.
+ */
+public class MavenMappings {
+
+    private static final String MAPPINGS_KEY = "mavenMappings";
+    private static final String JAR_PACKAGING = "jar";
+    private static final String WAR_PACKAGING = "war";
+    private static final String JAVA_PLUGIN_NAME = "java";
+    private static final String WAR_PLUGIN_NAME = "war";
+
+    private final Map<String, String> plugins = new LinkedHashMap<String, String>();
+    private final Map<String, Map<MavenScope, String>> configurations = new LinkedHashMap<String, Map<MavenScope, String>>();
+    private ObjectConverter converter;
+
+    private MavenMappings() {
+        scope(JAR_PACKAGING, JAVA_PLUGIN_NAME, MavenScope.COMPILE, "compile");
+        scope(JAR_PACKAGING, JAVA_PLUGIN_NAME, MavenScope.PROVIDED, "compile");
+        scope(JAR_PACKAGING, JAVA_PLUGIN_NAME, MavenScope.RUNTIME, "runtime");
+        scope(JAR_PACKAGING, JAVA_PLUGIN_NAME, MavenScope.TEST, "testCompile");
+        packaging(WAR_PACKAGING, WAR_PLUGIN_NAME, JAR_PACKAGING);
+        scope(WAR_PACKAGING, WAR_PLUGIN_NAME, MavenScope.PROVIDED, "providedCompile");
+        packaging("ejb", JAVA_PLUGIN_NAME);
+        packaging("bundle", JAVA_PLUGIN_NAME);
+        plugins.put("pom", null);
+        configurations.put("pom", new EnumMap<MavenScope, String>(MavenScope.class));
+    }
+
+    /**
+     * @return the mappings of the build the project belongs to, kept on its root project
+     */
+    public static MavenMappings get(Project project) {
+        Project rootProject = project.getRootProject();
+        synchronized (rootProject) { //projects configured in parallel must all get the same mappings
+            MavenMappings mappings = (MavenMappings) rootProject.getProperties().get(MAPPINGS_KEY);
+            if (mappings == null) {
+                mappings = new MavenMappings();
+                rootProject.setProperty(MAPPINGS_KEY, mappings);
+            }
+            return mappings;
+        }
+    }
+
+    /**
+     * Maps a packaging to a plugin, its scopes going to the same configurations as the scopes of a jar.
+     *
+     * @param plugin the plugin to apply to modules with this packaging, null for none
+     */
+    public void packaging(String packaging, String plugin) {
+        packaging(packaging, plugin, JAR_PACKAGING);
+    }
+
+    /**
+     * Maps a packaging to a plugin, its scopes going to the same configurations as the scopes of another packaging.
+     *
+     * @param plugin the plugin to apply to modules with this packaging, null for none
+     */
+    public synchronized void packaging(String packaging, String plugin, String scopesLikePackaging) {
+        Map<MavenScope, String> scopes = configurations.get(scopesLikePackaging);
+        if (scopes == null) {
+            throw new GradleException("Unknown packaging " + scopesLikePackaging + ", known packagings are " + plugins.keySet());
+        }
+        plugins.put(packaging, plugin);
+        configurations.put(packaging, new EnumMap<MavenScope, String>(scopes));
+        converter = null;
+    }
+
+    /**
+     * Maps a scope of an already known packaging to a configuration.
+     *
+     * @param configuration the configuration dependencies in this scope are added to, null for none
+     */
+    public synchronized void scope(String packaging, String scope, String configuration) {
+        MavenScope mavenScope = MavenScope.of(scope);
+        if (mavenScope == null) {
+            throw new GradleException("Unknown Maven scope " + scope);
+        }
+        if (!plugins.containsKey(packaging)) {
+            throw new GradleException("Unknown packaging " + packaging + ", map it with packaging() first");
+        }
+        scope(packaging, plugins.get(packaging), mavenScope, configuration);
+    }
+
+    private void scope(String packaging, String plugin, MavenScope scope, String configuration) {
+        plugins.put(packaging, plugin);
+        Map<MavenScope, String> scopes = configurations.get(packaging);
+        if (scopes == null) {
+            scopes = new EnumMap<MavenScope, String>(MavenScope.class);
+            configurations.put(packaging, scopes);
+        }
+        scopes.put(scope, configuration);
+        converter = null;
+    }
+
+    /**
+     * @return the mappings compiled to lookup tables, compiled again only if they changed since the last call
+     */
+    synchronized ObjectConverter getConverter() {
+        if (converter == null) {
+            ImmutableMap.Builder<String, Integer> packagingCodes = ImmutableMap.builder();
+            MavenScope[] scopes = MavenScope.values();
+            String[] packagingPlugins = new String[plugins.size()];
+            String[] scopeConfigurations = new String[plugins.size() * scopes.length];
+            int code = 0;
+            for (Map.Entry<String, String> packaging : plugins.entrySet()) {
+                packagingCodes.put(packaging.getKey(), code);
+                packagingPlugins[code] = packaging.getValue();
+                Map<MavenScope, String> packagingConfigurations = configurations.get(packaging.getKey());
+                for (MavenScope scope : scopes) {
+                    String configuration = packagingConfigurations.get(scope);
+                    if (configuration == null && scope == MavenScope.SYSTEM) {
+                        configuration = packagingConfigurations.get(MavenScope.PROVIDED);
+                    }
+                    scopeConfigurations[code * scopes.length + scope.ordinal()] = configuration;
+                }
+                code++;
+            }
+            converter = new ObjectConverter(packagingCodes.build(), packagingPlugins, scopeConfigurations);
+        }
+        return converter;
+    }
+}
@@ -0,0 +1,157 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.project.ProjectBuildingResult;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Maven reactor of the whole build, parsed and interpolated once and shared by all the projects the plugin is
+ * applied to.
+ */
+class MavenReactor {
+
+    private final List<ModuleSnapshot> modules;
+    private final Map<File, ModuleSnapshot> modulesByBasedir;
+    private final Map<String, ModuleSnapshot> modulesByCoordinates;
+
+    /**
+     * Modules may share a directory, when one is declared by a POM other than pom.xml, in which case the directory
+     * belongs to the first of them, parent first.
+     */
+    MavenReactor(List<ModuleSnapshot> modules) throws IOException {
+        this.modules = modules;
+        Map<File, ModuleSnapshot> byBasedir = new HashMap<File, ModuleSnapshot>();
+        for (ModuleSnapshot module : modules) {
+            File basedir = module.getBasedir().getCanonicalFile();
+            if (!byBasedir.containsKey(basedir)) {
+                byBasedir.put(basedir, module);
+            }
+        }
+        this.modulesByBasedir = ImmutableMap.copyOf(byBasedir);
+        Map<String, ModuleSnapshot> byCoordinates = new HashMap<String, ModuleSnapshot>();
+        for (ModuleSnapshot module : modules) {
+            byCoordinates.put(coordinates(module.getGroupId(), module.getArtifactId(), module.getVersion()), module);
+        }
+        this.modulesByCoordinates = ImmutableMap.copyOf(byCoordinates);
+    }
+
+    static MavenReactor build(File rootPom, ProjectBuilder builder, ProjectBuildingRequest buildingRequest) throws ProjectBuildingException, IOException {
+        List<MavenProject> projects = new ArrayList<MavenProject>();
+        for (ProjectBuildingResult result : builder.build(ImmutableList.of(rootPom), true, buildingRequest)) {
+            projects.add(result.getProject());
+        }
+        return of(projects);
+    }
+
+    static MavenReactor buildInParallel(File rootPom, ProjectBuilder builder, ProjectBuildingRequest buildingRequest, int threads, Logger logger) throws ProjectBuildingException, IOException {
+        return of(new ParallelReactorBuilder(builder, buildingRequest, threads, logger).build(rootPom));
+    }
+
+    private static MavenReactor of(List<MavenProject> projects) throws IOException {
+        ImmutableList.Builder<ModuleSnapshot> modules = ImmutableList.builder();
+        for (MavenProject project : projects) {
+            modules.add(ModuleSnapshot.of(project));
+        }
+        return new MavenReactor(modules.build());
+    }
+
+    /**
+     * Rebuilds the given modules only, keeping the rest of the reactor as it is.
+     */
+    MavenReactor rebuild(Set<ModuleSnapshot> staleModules, ProjectBuilder builder, ProjectBuildingRequest buildingRequest) throws ProjectBuildingException, IOException {
+        ImmutableList.Builder<ModuleSnapshot> rebuilt = ImmutableList.builder();
+        for (ModuleSnapshot module : modules) {
+            if (staleModules.contains(module)) {
+                rebuilt.add(ModuleSnapshot.of(builder.build(module.getPomFiles().get(0), buildingRequest).getProject()));
+            } else {
+                rebuilt.add(module);
+            }
+        }
+        return new MavenReactor(rebuilt.build());
+    }
+
+    /**
+     * @return the given modules along with all the reactor modules depending on them or importing them as BOMs,
+     *         directly or not
+     */
+    Set<ModuleSnapshot> withDependents(Set<ModuleSnapshot> changedModules) {
+        Map<ModuleSnapshot, List<ModuleSnapshot>> dependents = new HashMap<ModuleSnapshot, List<ModuleSnapshot>>();
+        for (ModuleSnapshot module : modules) {
+            for (ModuleSnapshot.Dependency dependency : module.getDependencies()) {
+                addDependent(dependents, getModule(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()), module);
+            }
+            for (String importedBom : module.getImportedBoms()) {
+                addDependent(dependents, modulesByCoordinates.get(importedBom), module);
+            }
+        }
+        Set<ModuleSnapshot> affected = new HashSet<ModuleSnapshot>();
+        LinkedList<ModuleSnapshot> queue = new LinkedList<ModuleSnapshot>(changedModules);
+        while (!queue.isEmpty()) {
+            ModuleSnapshot module = queue.removeFirst();
+            if (affected.add(module) && dependents.containsKey(module)) {
+                queue.addAll(dependents.get(module));
+            }
+        }
+        return affected;
+    }
+
+    private static void addDependent(Map<ModuleSnapshot, List<ModuleSnapshot>> dependents, ModuleSnapshot dependency, ModuleSnapshot dependent) {
+        if (dependency != null) {
+            List<ModuleSnapshot> moduleDependents = dependents.get(dependency);
+            if (moduleDependents == null) {
+                moduleDependents = new ArrayList<ModuleSnapshot>();
+                dependents.put(dependency, moduleDependents);
+            }
+            moduleDependents.add(dependent);
+        }
+    }
+
+    List<ModuleSnapshot> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return the POMs the reactor was built from, including the parents they inherit from
+     */
+    Set<File> getPomFiles() {
+        ImmutableSet.Builder<File> pomFiles = ImmutableSet.builder();
+        for (ModuleSnapshot module : modules) {
+            pomFiles.addAll(module.getPomFiles());
+        }
+        return pomFiles.build();
+    }
+
+    /**
+     * @return the reactor module located in the given directory, or null if the directory isn't part of the reactor
+     */
+    ModuleSnapshot getModule(File basedir) throws IOException {
+        return modulesByBasedir.get(basedir.getCanonicalFile());
+    }
+
+    /**
+     * @return the reactor module with the given coordinates, or null if they belong to an external artifact
+     */
+    ModuleSnapshot getModule(String groupId, String artifactId, String version) {
+        return modulesByCoordinates.get(coordinates(groupId, artifactId, version));
+    }
+
+    private static String coordinates(String groupId, String artifactId, String version) {
+        return groupId + ':' + artifactId + ':' + version;
+    }
+}
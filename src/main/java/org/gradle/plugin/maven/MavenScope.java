@@ -0,0 +1,55 @@
+package org.gradle.plugin.maven;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Maven dependency scopes, coded so the configuration a scope maps to can be looked up by index.
+ */
+enum MavenScope {
+
+    COMPILE("compile"),
+    PROVIDED("provided"),
+    RUNTIME("runtime"),
+    TEST("test"),
+    /**
+     * Provided from a path on the local file system, which is what is added as a file dependency. Unless mapped
+     * explicitly, it goes where provided goes.
+     */
+    SYSTEM("system"),
+    /**
+     * Only meaningful in dependencyManagement, where it imports a BOM. Unless mapped explicitly, dependencies in this
+     * scope aren't added to any configuration.
+     */
+    IMPORT("import");
+
+    /**
+     * The number of scopes, so lookup tables can be sized without cloning {@link #values()} every time.
+     */
+    static final int COUNT = values().length;
+
+    private static final Map<String, MavenScope> BY_NAME = new HashMap<String, MavenScope>();
+
+    static {
+        for (MavenScope scope : values()) {
+            BY_NAME.put(scope.name, scope);
+        }
+    }
+
+    private final String name;
+
+    MavenScope(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the scope with the given name, compile when there is none, as in Maven, or null if it is unknown
+     */
+    static MavenScope of(String name) {
+        return name == null ? COMPILE : BY_NAME.get(name);
+    }
+}
@@ -0,0 +1,218 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Persistent cache of the converted reactor, kept under the root project's .gradle directory. An entry is valid as
+ * long as the settings files and the properties that take part in interpolation and profile activation haven't
+ * changed, so a warm build can configure itself without starting Plexus or building Maven models at all.
+ * <p/>
+ * The digest of every POM the reactor was built from (modules and their parents) is kept along, so that when some of
+ * them change only the modules inheriting from them, and the modules depending on them or importing them as BOMs, need
+ * rebuilding. A module whose own POM changed may have gained or lost modules, in which case the whole reactor is
+ * rebuilt.
+ */
+class MetadataCache {
+
+    private static final int FORMAT_VERSION = 6;
+    private static final String CACHE_FILE_PATH = ".gradle/m2metadata/reactor.bin";
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final List<String> ENVIRONMENT_PROPERTIES = ImmutableList.of("java.version", "java.vendor", "os.name", "os.arch", "os.version", "user.home", "maven.home");
+
+    private final File cacheFile;
+    private final String environmentKey;
+    private final Logger logger;
+
+    private MetadataCache(File cacheFile, String environmentKey, Logger logger) {
+        this.cacheFile = cacheFile;
+        this.environmentKey = environmentKey;
+        this.logger = logger;
+    }
+
+    /**
+     * @return whether the value of the system property is part of the cache key, so a reactor interpolating it is
+     *         cached safely
+     */
+    static boolean isKeyedSystemProperty(String name) {
+        return ENVIRONMENT_PROPERTIES.contains(name);
+    }
+
+    static MetadataCache forBuild(Project rootProject, File... settingsFiles) throws IOException {
+        Map<String, String> properties = new TreeMap<String, String>(rootProject.getGradle().getStartParameter().getSystemPropertiesArgs());
+        for (String name : ENVIRONMENT_PROPERTIES) {
+            properties.put(name, System.getProperty(name, ""));
+        }
+        MessageDigest digest = newDigest();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            digest.update(bytes(property.getKey() + '=' + property.getValue() + '\n'));
+        }
+        //the fast reader doesn't see everything Maven does, so their reactors are cached apart
+        digest.update(bytes(PluginOptions.FAST + '=' + PluginOptions.isEnabled(rootProject, PluginOptions.FAST, false) + '\n'));
+        for (File settingsFile : settingsFiles) {
+            digest.update(bytes(settingsFile.getAbsolutePath() + '\n'));
+            if (settingsFile.isFile()) {
+                digest.update(Files.getDigest(settingsFile, newDigest()));
+            }
+        }
+        return new MetadataCache(new File(rootProject.getProjectDir(), CACHE_FILE_PATH), toHex(digest.digest()), rootProject.getLogger());
+    }
+
+    /**
+     * @return the cached reactor along with the modules whose POMs have changed since, or null if there is none or it
+     *         can't be reused at all
+     */
+    Entry load() {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(environmentKey)) {
+                logger.info("Cached Maven metadata in {} is out of date", cacheFile);
+                return null;
+            }
+            int pomCount = in.readInt();
+            Set<File> changedPomFiles = new HashSet<File>();
+            for (int i = 0; i < pomCount; i++) {
+                File pomFile = new File(in.readUTF());
+                String pomDigest = in.readUTF();
+                if (!pomFile.isFile()) {
+                    logger.info("Cached Maven metadata in {} is out of date, {} is gone", cacheFile, pomFile);
+                    return null;
+                }
+                if (!digest(pomFile).equals(pomDigest)) {
+                    logger.info("{} has changed since Maven metadata was cached", pomFile);
+                    changedPomFiles.add(pomFile);
+                }
+            }
+            int moduleCount = in.readInt();
+            ImmutableList.Builder<ModuleSnapshot> modules = ImmutableList.builder();
+            ImmutableSet.Builder<ModuleSnapshot> changedModules = ImmutableSet.builder();
+            for (int i = 0; i < moduleCount; i++) {
+                ModuleSnapshot module = ModuleSnapshot.read(in);
+                modules.add(module);
+                if (!Collections.disjoint(module.getPomFiles(), changedPomFiles)) {
+                    File ownPomFile = module.getPomFiles().get(0);
+                    if (changedPomFiles.contains(ownPomFile) && !module.getModules().equals(LightweightPomReader.declaredModules(ownPomFile))) {
+                        logger.info("Cached Maven metadata in {} is out of date, the modules of {} may have changed", cacheFile, ownPomFile);
+                        return null;
+                    }
+                    changedModules.add(module);
+                }
+            }
+            return new Entry(new MavenReactor(modules.build()), changedModules.build());
+        } catch (IOException e) {
+            logger.warn("Failed to read cached Maven metadata from " + cacheFile + ", rebuilding it", e);
+            return null;
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    void store(MavenReactor reactor) {
+        File tempFile = null;
+        DataOutputStream out = null;
+        try {
+            Files.createParentDirs(cacheFile);
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile()); //unique, builds of the same tree may store concurrently
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(environmentKey);
+            out.writeInt(reactor.getPomFiles().size());
+            for (File pomFile : reactor.getPomFiles()) {
+                out.writeUTF(pomFile.getPath());
+                out.writeUTF(digest(pomFile));
+            }
+            out.writeInt(reactor.getModules().size());
+            for (ModuleSnapshot module : reactor.getModules()) {
+                module.write(out);
+            }
+            out.close();
+            out = null;
+            if (cacheFile.exists() && !cacheFile.delete()) {
+                throw new IOException("Can't delete " + cacheFile);
+            }
+            Files.move(tempFile, cacheFile);
+        } catch (IOException e) {
+            logger.warn("Failed to write Maven metadata cache to " + cacheFile, e);
+        } finally {
+            Closeables.closeQuietly(out);
+            if (tempFile != null && tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * A cached reactor and the modules of it that are out of date.
+     */
+    static class Entry {
+        private final MavenReactor reactor;
+        private final Set<ModuleSnapshot> changedModules;
+
+        private Entry(MavenReactor reactor, Set<ModuleSnapshot> changedModules) {
+            this.reactor = reactor;
+            this.changedModules = changedModules;
+        }
+
+        MavenReactor getReactor() {
+            return reactor;
+        }
+
+        Set<ModuleSnapshot> getChangedModules() {
+            return changedModules;
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        return toHex(Files.getDigest(file, newDigest()));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
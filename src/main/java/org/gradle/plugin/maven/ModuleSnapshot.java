@@ -0,0 +1,505 @@
+package org.gradle.plugin.maven;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.artifact.ProjectArtifact;
+import org.codehaus.plexus.interpolation.InterpolationException;
+import org.codehaus.plexus.interpolation.PrefixedObjectValueSource;
+import org.codehaus.plexus.interpolation.PropertiesBasedValueSource;
+import org.codehaus.plexus.interpolation.StringSearchInterpolator;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of an effective Maven model the plugin actually uses, detached from Maven so it can be cached on disk and
+ * shared between projects.
+ * <p/>
+ * Exclusions and managed versions are mostly inherited from common parents, so they are interned: modules declaring
+ * the same ones share a single instance, however many modules the reactor has.
+ * <p/>
+ * The BOMs a module imports are merged into its managed versions, so they are also kept apart as coordinates: a module
+ * must be rebuilt when a BOM of the reactor it imports changes, just as when one of its dependencies does.
+ */
+class ModuleSnapshot {
+
+    private static final String MAVEN_COMPILER_PLUGIN_KEY = "org.apache.maven.plugins:maven-compiler-plugin";
+    private static final String MAVEN_SOURCE_PLUGIN_KEY = "org.apache.maven.plugins:maven-source-plugin";
+    private static final String SOURCE_LEVEL_COMPILE_PLUGIN_SETTING = "source";
+    private static final String TARGET_LEVEL_COMPILE_PLUGIN_SETTING = "target";
+    private static final String IMPORT_SCOPE = "import";
+    private static final List<String> PROJECT_EXPRESSION_PREFIXES = ImmutableList.of("project.", "pom.");
+
+    private static final Interner<Exclusion> EXCLUSIONS = Interners.newWeakInterner();
+    private static final Interner<List<Exclusion>> EXCLUSION_LISTS = Interners.newWeakInterner();
+    private static final Interner<List<String>> MANAGED_VERSIONS = Interners.newWeakInterner();
+    private static final Interner<List<String>> IMPORTED_BOMS = Interners.newWeakInterner();
+
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final String packaging;
+    private final File basedir;
+    private final boolean snapshot;
+    private final List<Dependency> dependencies;
+    private final List<Repository> repositories;
+    private final String compilerSource;
+    private final String compilerTarget;
+    private final boolean sourcePlugin;
+    private final List<File> pomFiles;
+    private final List<String> modules;
+    private final List<String> managedVersions;
+    private final List<String> importedBoms;
+
+    ModuleSnapshot(String groupId, String artifactId, String version, String packaging, File basedir, boolean snapshot,
+                   List<Dependency> dependencies, List<Repository> repositories,
+                   String compilerSource, String compilerTarget, boolean sourcePlugin,
+                   List<File> pomFiles, List<String> modules, List<String> managedVersions, List<String> importedBoms) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.packaging = packaging;
+        this.basedir = basedir;
+        this.snapshot = snapshot;
+        this.dependencies = dependencies;
+        this.repositories = repositories;
+        this.compilerSource = compilerSource;
+        this.compilerTarget = compilerTarget;
+        this.sourcePlugin = sourcePlugin;
+        this.pomFiles = pomFiles;
+        this.modules = modules;
+        this.managedVersions = MANAGED_VERSIONS.intern(directVersionsWin(managedVersions, dependencies));
+        this.importedBoms = IMPORTED_BOMS.intern(importedBoms);
+    }
+
+    static ModuleSnapshot of(MavenProject mavenProject) throws IOException {
+        ImmutableList.Builder<Dependency> dependencies = ImmutableList.builder();
+        for (org.apache.maven.model.Dependency mavenDependency : mavenProject.getDependencies()) {
+            ImmutableList.Builder<Exclusion> exclusions = ImmutableList.builder();
+            for (org.apache.maven.model.Exclusion mavenExclusion : mavenDependency.getExclusions()) {
+                exclusions.add(exclusion(mavenExclusion.getGroupId(), mavenExclusion.getArtifactId()));
+            }
+            dependencies.add(new Dependency(mavenDependency.getGroupId(), mavenDependency.getArtifactId(),
+                    mavenDependency.getVersion(), mavenDependency.getScope(), mavenDependency.getSystemPath(), exclusions.build()));
+        }
+        ImmutableList.Builder<String> managedVersions = ImmutableList.builder();
+        if (mavenProject.getDependencyManagement() != null) {
+            for (org.apache.maven.model.Dependency managedDependency : mavenProject.getDependencyManagement().getDependencies()) {
+                //imported BOMs are already merged in the effective model, an import left means it couldn't be resolved
+                if (managedDependency.getVersion() != null && !IMPORT_SCOPE.equals(managedDependency.getScope())) {
+                    managedVersions.add(managedDependency.getGroupId() + ':' + managedDependency.getArtifactId() + ':' + managedDependency.getVersion());
+                }
+            }
+        }
+        ImmutableList.Builder<Repository> repositories = ImmutableList.builder();
+        for (org.apache.maven.model.Repository mavenRepository : mavenProject.getRepositories()) {
+            repositories.add(new Repository(mavenRepository.getId(), mavenRepository.getUrl()));
+        }
+        String compilerSource = null;
+        String compilerTarget = null;
+        Plugin mavenCompilerPlugin = mavenProject.getPlugin(MAVEN_COMPILER_PLUGIN_KEY);
+        if (mavenCompilerPlugin != null) {
+            Xpp3Dom configuration = (Xpp3Dom) mavenCompilerPlugin.getConfiguration();
+            if (configuration != null) { //where is my null safe elvis :(
+                compilerSource = childValue(configuration, SOURCE_LEVEL_COMPILE_PLUGIN_SETTING);
+                compilerTarget = childValue(configuration, TARGET_LEVEL_COMPILE_PLUGIN_SETTING);
+            }
+        }
+        ImmutableList.Builder<File> pomFiles = ImmutableList.builder();
+        ImmutableList.Builder<String> importedBoms = ImmutableList.builder();
+        for (MavenProject current = mavenProject; current != null; current = current.getParent()) {
+            if (current.getFile() != null) {
+                pomFiles.add(current.getFile().getCanonicalFile());
+            }
+            //only the models as written still tell the imports apart, they are inherited along with the parents
+            DependencyManagement writtenManagement = current.getOriginalModel() == null ? null : current.getOriginalModel().getDependencyManagement();
+            if (writtenManagement != null) {
+                for (org.apache.maven.model.Dependency managedDependency : writtenManagement.getDependencies()) {
+                    if (IMPORT_SCOPE.equals(managedDependency.getScope())) {
+                        importedBoms.add(interpolate(current, managedDependency.getGroupId()) + ':'
+                                + interpolate(current, managedDependency.getArtifactId()) + ':' + interpolate(current, managedDependency.getVersion()));
+                    }
+                }
+            }
+        }
+        return new ModuleSnapshot(mavenProject.getGroupId(), mavenProject.getArtifactId(), mavenProject.getVersion(),
+                mavenProject.getPackaging(), mavenProject.getBasedir(), new ProjectArtifact(mavenProject).isSnapshot(),
+                dependencies.build(), repositories.build(), compilerSource, compilerTarget,
+                mavenProject.getPlugin(MAVEN_SOURCE_PLUGIN_KEY) != null, pomFiles.build(), ImmutableList.copyOf(mavenProject.getModules()),
+                managedVersions.build(), importedBoms.build());
+    }
+
+    /**
+     * As in Maven, a managed version only applies to a direct dependency which doesn't declare its own, so the version
+     * of a direct dependency replaces the managed one.
+     */
+    private static List<String> directVersionsWin(List<String> managedVersions, List<Dependency> dependencies) {
+        if (managedVersions.isEmpty() || dependencies.isEmpty()) {
+            return managedVersions;
+        }
+        Map<String, String> directVersions = new HashMap<String, String>();
+        for (Dependency dependency : dependencies) {
+            if (dependency.version != null) {
+                directVersions.put(dependency.groupId + ':' + dependency.artifactId, dependency.version);
+            }
+        }
+        ImmutableList.Builder<String> versions = ImmutableList.builder();
+        for (String managedVersion : managedVersions) {
+            int versionStart = managedVersion.lastIndexOf(':') + 1;
+            String directVersion = directVersions.get(managedVersion.substring(0, versionStart - 1));
+            versions.add(directVersion == null ? managedVersion : managedVersion.substring(0, versionStart) + directVersion);
+        }
+        return versions.build();
+    }
+
+    /**
+     * Resolves the expressions of a value as written in a POM against the effective model it ended up in, leaving
+     * those that can't be resolved as they are.
+     */
+    private static String interpolate(MavenProject project, String value) {
+        if (value == null || !value.contains("${")) {
+            return value;
+        }
+        StringSearchInterpolator interpolator = new StringSearchInterpolator();
+        interpolator.addValueSource(new PrefixedObjectValueSource(PROJECT_EXPRESSION_PREFIXES, project, true));
+        interpolator.addValueSource(new PropertiesBasedValueSource(project.getProperties()));
+        try {
+            return interpolator.interpolate(value);
+        } catch (InterpolationException e) {
+            return value;
+        }
+    }
+
+    /**
+     * @return the shared instance of the exclusion
+     */
+    static Exclusion exclusion(String groupId, String artifactId) {
+        return EXCLUSIONS.intern(new Exclusion(groupId, artifactId));
+    }
+
+    private static String childValue(Xpp3Dom configuration, String name) {
+        Xpp3Dom child = configuration.getChild(name);
+        return child == null ? null : child.getValue();
+    }
+
+    String getGroupId() {
+        return groupId;
+    }
+
+    String getArtifactId() {
+        return artifactId;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    String getId() {
+        return groupId + ':' + artifactId + ':' + version;
+    }
+
+    String getPackaging() {
+        return packaging;
+    }
+
+    File getBasedir() {
+        return basedir;
+    }
+
+    boolean isSnapshot() {
+        return snapshot;
+    }
+
+    List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    List<Repository> getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * @return the source level configured for maven-compiler-plugin, or null if there is none
+     */
+    String getCompilerSource() {
+        return compilerSource;
+    }
+
+    /**
+     * @return the target level configured for maven-compiler-plugin, or null if there is none
+     */
+    String getCompilerTarget() {
+        return compilerTarget;
+    }
+
+    boolean hasSourcePlugin() {
+        return sourcePlugin;
+    }
+
+    /**
+     * @return the POM of the module followed by the POMs of its parents, as far as they were read from files
+     */
+    List<File> getPomFiles() {
+        return pomFiles;
+    }
+
+    /**
+     * @return the modules the module declares, as written in its POM
+     */
+    List<String> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return the versions of the module's dependencyManagement, imported BOMs included, as group:name:version, with
+     *         the version of the module's own dependency instead for those it declares directly
+     */
+    List<String> getManagedVersions() {
+        return managedVersions;
+    }
+
+    /**
+     * @return the BOMs the module and its parents import in their dependencyManagement, as group:name:version
+     */
+    List<String> getImportedBoms() {
+        return importedBoms;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(groupId);
+        out.writeUTF(artifactId);
+        out.writeUTF(version);
+        out.writeUTF(packaging);
+        out.writeUTF(basedir.getPath());
+        out.writeBoolean(snapshot);
+        out.writeInt(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            out.writeUTF(dependency.groupId);
+            out.writeUTF(dependency.artifactId);
+            writeNullable(out, dependency.version);
+            writeNullable(out, dependency.scope);
+            writeNullable(out, dependency.systemPath);
+            out.writeInt(dependency.exclusions.size());
+            for (Exclusion exclusion : dependency.exclusions) {
+                writeNullable(out, exclusion.groupId);
+                writeNullable(out, exclusion.artifactId);
+            }
+        }
+        out.writeInt(repositories.size());
+        for (Repository repository : repositories) {
+            writeNullable(out, repository.id);
+            writeNullable(out, repository.url);
+        }
+        writeNullable(out, compilerSource);
+        writeNullable(out, compilerTarget);
+        out.writeBoolean(sourcePlugin);
+        out.writeInt(pomFiles.size());
+        for (File pomFile : pomFiles) {
+            out.writeUTF(pomFile.getPath());
+        }
+        out.writeInt(modules.size());
+        for (String module : modules) {
+            out.writeUTF(module);
+        }
+        out.writeInt(managedVersions.size());
+        for (String managedVersion : managedVersions) {
+            out.writeUTF(managedVersion);
+        }
+        out.writeInt(importedBoms.size());
+        for (String importedBom : importedBoms) {
+            out.writeUTF(importedBom);
+        }
+    }
+
+    static ModuleSnapshot read(DataInput in) throws IOException {
+        String groupId = in.readUTF();
+        String artifactId = in.readUTF();
+        String version = in.readUTF();
+        String packaging = in.readUTF();
+        File basedir = new File(in.readUTF());
+        boolean snapshot = in.readBoolean();
+        int dependencyCount = in.readInt();
+        ImmutableList.Builder<Dependency> dependencies = ImmutableList.builder();
+        for (int i = 0; i < dependencyCount; i++) {
+            String dependencyGroupId = in.readUTF();
+            String dependencyArtifactId = in.readUTF();
+            String dependencyVersion = readNullable(in);
+            String scope = readNullable(in);
+            String systemPath = readNullable(in);
+            int exclusionCount = in.readInt();
+            ImmutableList.Builder<Exclusion> exclusions = ImmutableList.builder();
+            for (int j = 0; j < exclusionCount; j++) {
+                exclusions.add(exclusion(readNullable(in), readNullable(in)));
+            }
+            dependencies.add(new Dependency(dependencyGroupId, dependencyArtifactId, dependencyVersion, scope, systemPath, exclusions.build()));
+        }
+        int repositoryCount = in.readInt();
+        ImmutableList.Builder<Repository> repositories = ImmutableList.builder();
+        for (int i = 0; i < repositoryCount; i++) {
+            repositories.add(new Repository(readNullable(in), readNullable(in)));
+        }
+        String compilerSource = readNullable(in);
+        String compilerTarget = readNullable(in);
+        boolean sourcePlugin = in.readBoolean();
+        int pomFileCount = in.readInt();
+        ImmutableList.Builder<File> pomFiles = ImmutableList.builder();
+        for (int i = 0; i < pomFileCount; i++) {
+            pomFiles.add(new File(in.readUTF()));
+        }
+        int moduleCount = in.readInt();
+        ImmutableList.Builder<String> modules = ImmutableList.builder();
+        for (int i = 0; i < moduleCount; i++) {
+            modules.add(in.readUTF());
+        }
+        int managedVersionCount = in.readInt();
+        ImmutableList.Builder<String> managedVersions = ImmutableList.builder();
+        for (int i = 0; i < managedVersionCount; i++) {
+            managedVersions.add(in.readUTF());
+        }
+        int importedBomCount = in.readInt();
+        ImmutableList.Builder<String> importedBoms = ImmutableList.builder();
+        for (int i = 0; i < importedBomCount; i++) {
+            importedBoms.add(in.readUTF());
+        }
+        return new ModuleSnapshot(groupId, artifactId, version, packaging, basedir, snapshot, dependencies.build(),
+                repositories.build(), compilerSource, compilerTarget, sourcePlugin, pomFiles.build(), modules.build(),
+                managedVersions.build(), importedBoms.build());
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static class Dependency {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String scope;
+        private final String systemPath;
+        private final List<Exclusion> exclusions;
+
+        Dependency(String groupId, String artifactId, String version, String scope, String systemPath, List<Exclusion> exclusions) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.scope = scope;
+            this.systemPath = systemPath;
+            this.exclusions = EXCLUSION_LISTS.intern(exclusions);
+        }
+
+        String getGroupId() {
+            return groupId;
+        }
+
+        String getArtifactId() {
+            return artifactId;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        String getScope() {
+            return scope;
+        }
+
+        /**
+         * @return the path of the artifact of a system scoped dependency, null for the others
+         */
+        String getSystemPath() {
+            return systemPath;
+        }
+
+        List<Exclusion> getExclusions() {
+            return exclusions;
+        }
+    }
+
+    static class Exclusion {
+        private final String groupId;
+        private final String artifactId;
+        private final Map<String, String> excludeRule;
+
+        Exclusion(String groupId, String artifactId) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            ImmutableMap.Builder<String, String> excludeRule = ImmutableMap.builder();
+            if (groupId != null) {
+                excludeRule.put("group", groupId);
+            }
+            if (artifactId != null) {
+                excludeRule.put("module", artifactId);
+            }
+            this.excludeRule = excludeRule.build();
+        }
+
+        String getGroupId() {
+            return groupId;
+        }
+
+        String getArtifactId() {
+            return artifactId;
+        }
+
+        /**
+         * @return the exclusion in the notation of Gradle's exclude rules
+         */
+        Map<String, String> getExcludeRule() {
+            return excludeRule;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Exclusion)) {
+                return false;
+            }
+            Exclusion other = (Exclusion) o;
+            return Objects.equal(groupId, other.groupId) && Objects.equal(artifactId, other.artifactId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(groupId, artifactId);
+        }
+    }
+
+    static class Repository {
+        private final String id;
+        private final String url;
+
+        Repository(String id, String url) {
+            this.id = id;
+            this.url = url;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getUrl() {
+            return url;
+        }
+    }
+}
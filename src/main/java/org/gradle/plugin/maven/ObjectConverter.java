@@ -1,28 +1,44 @@
 package org.gradle.plugin.maven;
 
 import java.util.Map;
-import static com.google.common.collect.ImmutableMap.of;
 
+/**
+ * Compiled form of the {@link MavenMappings}: packagings are coded once per module, after which the plugin and the
+ * configuration of each dependency scope are plain array lookups.
+ */
 class ObjectConverter {
 
-    private static final String JAVA_PLUGIN_NAME = "java";
-    private static final String WAR_PLUGIN_NAME = "war";
+    static final int UNKNOWN_PACKAGING = -1;
 
-    private static final Map<String, String> packagingToPlugin = of(
-            "jar", JAVA_PLUGIN_NAME,
-            "war", WAR_PLUGIN_NAME);
+    private final Map<String, Integer> packagingCodes;
+    private final String[] plugins;
+    private final String[] configurations;
 
-    private static final Map<String, ? extends Map<String, String>> scopeToConfigurationAccordingToPackaging = of(
-            "compile", of("jar", "compile", "war", "compile"),
-            "test", of("jar", "testCompile", "war", "testCompile"),
-            "runtime", of("jar", "runtime", "war", "runtime"),
-            "provided", of("jar", "compile", "war", "providedCompile"));
+    /**
+     * @param packagingCodes the code of every known packaging, from 0 up
+     * @param plugins        the plugin applied for each packaging code, null for none
+     * @param configurations the configuration of each scope for each packaging code, at code * scope count + scope
+     *                       ordinal, null for none
+     */
+    ObjectConverter(Map<String, Integer> packagingCodes, String[] plugins, String[] configurations) {
+        this.packagingCodes = packagingCodes;
+        this.plugins = plugins;
+        this.configurations = configurations;
+    }
+
+    /**
+     * @return the code of the packaging, or {@link #UNKNOWN_PACKAGING}
+     */
+    int packagingCode(String packaging) {
+        Integer code = packagingCodes.get(packaging);
+        return code == null ? UNKNOWN_PACKAGING : code;
+    }
 
-    public static String packaging2Plugin(String packaging) {
-        return packagingToPlugin.get(packaging);
+    String packaging2Plugin(int packagingCode) {
+        return packagingCode == UNKNOWN_PACKAGING ? null : plugins[packagingCode];
     }
 
-    public static String scope2Configuration(String scope, String packaging) {
-        return scopeToConfigurationAccordingToPackaging.get(scope).get(packaging);
+    String scope2Configuration(int packagingCode, MavenScope scope) {
+        return packagingCode == UNKNOWN_PACKAGING ? null : configurations[packagingCode * MavenScope.COUNT + scope.ordinal()];
     }
 }
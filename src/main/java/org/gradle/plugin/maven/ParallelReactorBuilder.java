@@ -0,0 +1,157 @@
+package org.gradle.plugin.maven;
+
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the models of the reactor modules on a bounded thread pool instead of one after the other. Each module is
+ * built on its own as soon as the module declaring it is done, and the results are returned parent first, in the
+ * order of the module declarations, just like the serial reactor build.
+ * <p/>
+ * The models are the same as the serial build's as long as every parent is found at its relativePath (the default
+ * ../pom.xml) or in a repository. Modules built on their own don't see the reactor's model pool, so a parent which is a
+ * reactor module living elsewhere can't be found, in which case the build fails and {@link MavenBuildContext} builds
+ * the reactor serially instead. Each build gets its own copy of the building request, as Maven sets values on it while
+ * building.
+ */
+class ParallelReactorBuilder {
+
+    private static final String POM_FILE_NAME = "pom.xml";
+
+    private final ProjectBuilder builder;
+    private final ProjectBuildingRequest buildingRequest;
+    private final int threads;
+    private final Logger logger;
+
+    ParallelReactorBuilder(ProjectBuilder builder, ProjectBuildingRequest buildingRequest, int threads, Logger logger) {
+        this.builder = builder;
+        this.buildingRequest = buildingRequest;
+        this.threads = threads;
+        this.logger = logger;
+    }
+
+    List<MavenProject> build(File rootPom) throws ProjectBuildingException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ModelBuilderThreadFactory(getClass().getClassLoader()));
+        try {
+            CompletionService<MavenProject> completionService = new ExecutorCompletionService<MavenProject>(executor);
+            Map<File, MavenProject> projectsByPom = new HashMap<File, MavenProject>();
+            Set<File> submitted = new HashSet<File>();
+            File canonicalRootPom = rootPom.getCanonicalFile();
+            submitted.add(canonicalRootPom);
+            completionService.submit(new ModuleBuild(canonicalRootPom));
+            int pending = 1;
+            while (pending > 0) {
+                MavenProject project = take(completionService);
+                pending--;
+                projectsByPom.put(project.getFile().getCanonicalFile(), project);
+                for (File modulePom : modulePoms(project)) {
+                    if (submitted.add(modulePom)) {
+                        completionService.submit(new ModuleBuild(modulePom));
+                        pending++;
+                    }
+                }
+            }
+            List<MavenProject> projects = new ArrayList<MavenProject>(projectsByPom.size());
+            collectParentFirst(canonicalRootPom, projectsByPom, projects, new HashSet<File>());
+            return projects;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static MavenProject take(CompletionService<MavenProject> completionService) throws ProjectBuildingException {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while building the Maven reactor", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ProjectBuildingException) {
+                throw (ProjectBuildingException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new GradleException("Failed to build the Maven reactor", cause);
+        }
+    }
+
+    private void collectParentFirst(File pom, Map<File, MavenProject> projectsByPom, List<MavenProject> projects, Set<File> visited) throws IOException {
+        MavenProject project = projectsByPom.get(pom);
+        if (project != null && visited.add(pom)) {
+            projects.add(project);
+            for (File modulePom : modulePoms(project)) {
+                collectParentFirst(modulePom, projectsByPom, projects, visited);
+            }
+        }
+    }
+
+    private static List<File> modulePoms(MavenProject project) throws IOException {
+        List<File> modulePoms = new ArrayList<File>();
+        for (String module : project.getModules()) {
+            File modulePom = new File(project.getBasedir(), module.replace('\\', File.separatorChar));
+            if (modulePom.isDirectory()) {
+                modulePom = new File(modulePom, POM_FILE_NAME);
+            }
+            modulePoms.add(modulePom.getCanonicalFile());
+        }
+        return modulePoms;
+    }
+
+    private class ModuleBuild implements Callable<MavenProject> {
+        private final File pom;
+
+        ModuleBuild(File pom) {
+            this.pom = pom;
+        }
+
+        public MavenProject call() throws ProjectBuildingException {
+            long start = System.currentTimeMillis();
+            MavenProject project = builder.build(pom, new DefaultProjectBuildingRequest(buildingRequest)).getProject();
+            logger.info("Built Maven model of {} in {} ms", project.getId(), System.currentTimeMillis() - start);
+            return project;
+        }
+    }
+
+    /**
+     * Daemon threads with the plugin's class loader as context class loader, so Plexus finds its components on them.
+     */
+    private static class ModelBuilderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final ClassLoader classLoader;
+
+        ModelBuilderThreadFactory(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "maven-model-builder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.gradle.plugin.maven;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+
+/**
+ * Switches of the plugin. They are read from the root project properties, so they can be given on the command line,
+ * e.g. {@code gradle -Pm2metadata.cache=false build}, or in gradle.properties.
+ */
+class PluginOptions {
+
+    /**
+     * Whether the converted reactor is cached on disk between builds, on by default.
+     */
+    static final String CACHE = "m2metadata.cache";
+
+    /**
+     * Whether the reactor modules are built in parallel rather than one after the other, off by default.
+     */
+    static final String PARALLEL = "m2metadata.parallel";
+
+    /**
+     * The number of threads building the reactor modules in parallel, the number of available cores by default.
+     */
+    static final String THREADS = "m2metadata.threads";
+
+    /**
+     * Whether repositories, external dependencies and the test runner are converted only when they are needed, off by
+     * default.
+     */
+    static final String LAZY = "m2metadata.lazy";
+
+    /**
+     * Whether the time and memory spent in each phase of the plugin are reported at the end of the build, off by
+     * default.
+     */
+    static final String PROFILE = "m2metadata.profile";
+
+    /**
+     * A file to write the profile to as JSON, which implies {@link #PROFILE}.
+     */
+    static final String PROFILE_REPORT = "m2metadata.profileReport";
+
+    /**
+     * Whether dependencies are resolved from the indexed local repository only, failing on the ones missing from it
+     * rather than going to remote repositories, off by default.
+     */
+    static final String OFFLINE = "m2metadata.offline";
+
+    /**
+     * Whether the POMs are read with a streaming parser rather than Maven's project builder, falling back to the latter
+     * on what the parser can't handle, off by default.
+     */
+    static final String FAST = "m2metadata.fast";
+
+    private PluginOptions() {
+    }
+
+    static boolean isEnabled(Project project, String option, boolean defaultValue) {
+        Object value = project.getRootProject().getProperties().get(option);
+        return value == null ? defaultValue : Boolean.valueOf(value.toString().trim());
+    }
+
+    static String getString(Project project, String option) {
+        Object value = project.getRootProject().getProperties().get(option);
+        return value == null ? null : value.toString();
+    }
+
+    static int getInt(Project project, String option, int defaultValue) {
+        Object value = project.getRootProject().getProperties().get(option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.toString().trim()));
+        } catch (NumberFormatException e) {
+            throw new GradleException("Option " + option + " must be a number, but was " + value, e);
+        }
+    }
+}